@@ -0,0 +1,51 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sample documents and ledger replies used by the benchmarks.
+ *
+ * @author UBICUA
+ */
+final class Fixtures {
+
+    static final String DID_DOCUMENT = "did-document.json";
+    static final String RESOLVE_RESULT = "resolve-result.json";
+    static final String NYM_RESPONSE = "nym-response.json";
+    static final String ATTR_RESPONSE = "attr-response.json";
+
+    private Fixtures() {
+    }
+
+    static String resource(String name) {
+
+        try (InputStream input = Fixtures.class.getResourceAsStream("/" + name)) {
+            if (input == null) {
+                throw new IllegalStateException("Missing fixture " + name);
+            }
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import jssi.resolver.driver.http.HttpConnectionPool;
+import jssi.resolver.driver.http.HttpDriver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uniresolver.ResolutionException;
+import uniresolver.result.ResolveResult;
+
+/**
+ * HttpDriver round trip, pooled connection and response parsing against an
+ * in-process HTTP server on the loopback interface.
+ *
+ * @author UBICUA
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpDriverBenchmark {
+
+    private static final String IDENTIFIER = "did:example:123456789abcdefghi";
+
+    private ExecutorService serverExecutor;
+    private HttpServer server;
+    private HttpConnectionPool connectionPool;
+    private HttpDriver driver;
+
+    @Setup
+    public void setup() throws IOException {
+
+        byte[] body = Fixtures.resource(Fixtures.RESOLVE_RESULT).getBytes(StandardCharsets.UTF_8);
+
+        serverExecutor = Executors.newFixedThreadPool(4);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/1.0/identifiers/", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", ResolveResult.MIME_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        connectionPool = new HttpConnectionPool();
+
+        driver = new HttpDriver();
+        driver.setPattern("^(did:example:.+)$");
+        driver.setResolveUri("http://127.0.0.1:" + server.getAddress().getPort() + "/1.0/identifiers/$1");
+        driver.setConnectionPool(connectionPool);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        connectionPool.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public ResolveResult resolve() throws ResolutionException {
+        return driver.resolve(IDENTIFIER);
+    }
+
+    @Benchmark
+    public ResolveResult resolveAsync() {
+        return driver.resolveAsync(IDENTIFIER).join();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.benchmarks;
+
+import foundation.identity.did.DIDDocument;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import jssi.resolver.local.Drivers;
+import jssi.resolver.local.LocalUniResolver;
+import jssi.resolver.local.SingleFlight;
+import jssi.resolver.local.metrics.ResolverMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uniresolver.ResolutionException;
+import uniresolver.driver.Driver;
+import uniresolver.result.ResolveResult;
+
+/**
+ * Dispatch, extensions and result merging of LocalUniResolver with in-memory
+ * drivers. Only the last driver knows the identifier, so "drivers" also
+ * measures the cost of the drivers tried before it.
+ *
+ * @author UBICUA
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalUniResolverBenchmark {
+
+    private static final String IDENTIFIER = "did:example:123456789abcdefghi";
+
+    @Param({"1", "4"})
+    public int drivers;
+
+    private LocalUniResolver resolver;
+
+    @Setup
+    public void setup() throws Exception {
+
+        DIDDocument didDocument = DIDDocument.fromJson(Fixtures.resource(Fixtures.DID_DOCUMENT));
+
+        Drivers configuredDrivers = new Drivers();
+        for (int i = 1; i <= drivers; i++) {
+            configuredDrivers.addDriver("driver-" + i, new StubDriver(i == drivers ? didDocument : null));
+        }
+
+        resolver = new LocalUniResolver(configuredDrivers, new SingleFlight(), new ResolverMetrics());
+    }
+
+    @Benchmark
+    public ResolveResult resolve() throws ResolutionException {
+        return resolver.resolve(IDENTIFIER);
+    }
+
+    @Benchmark
+    public ResolveResult resolveDidUrl() throws ResolutionException {
+        return resolver.resolve(IDENTIFIER + "?service=agent");
+    }
+
+    @Benchmark
+    public ResolveResult resolveAsync() {
+        return resolver.resolveAsync(IDENTIFIER, null).join();
+    }
+
+    /**
+     * Driver answering from memory, or not at all if it has no document.
+     */
+    static class StubDriver implements Driver {
+
+        private final DIDDocument didDocument;
+
+        StubDriver(DIDDocument didDocument) {
+            this.didDocument = didDocument;
+        }
+
+        @Override
+        public ResolveResult resolve(String identifier) {
+            return didDocument == null ? null : ResolveResult.build(didDocument);
+        }
+
+        @Override
+        public Map<String, Object> properties() {
+            return Collections.emptyMap();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uniresolver.result.ResolveResult;
+
+/**
+ * Serialization of a resolve result, as done for every response of the
+ * resolver, and parsing of a driver response.
+ *
+ * @author UBICUA
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResolveResultBenchmark {
+
+    private String json;
+    private ResolveResult resolveResult;
+
+    @Setup
+    public void setup() throws IOException {
+        json = Fixtures.resource(Fixtures.RESOLVE_RESULT);
+        resolveResult = ResolveResult.fromJson(json);
+        resolveResult.getDidResolutionMetadata().put("driverId", "driver-1");
+        resolveResult.getDidResolutionMetadata().put("duration", 12L);
+    }
+
+    @Benchmark
+    public String toJson() throws JsonProcessingException {
+        return resolveResult.toJson();
+    }
+
+    @Benchmark
+    public ResolveResult fromJson() throws IOException {
+        return ResolveResult.fromJson(json);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import jssi.resolver.driver.sov.SovDriver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uniresolver.result.ResolveResult;
+
+/**
+ * Parsing of the GET_NYM and GET_ATTR replies of an Indy ledger into a DID
+ * document, without the ledger round trips.
+ *
+ * @author UBICUA
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SovDriverBenchmark {
+
+    private static final String IDENTIFIER = "did:sov:WRfXPg8dantKVubE3HX8pw";
+    private static final String NO_ATTR_RESPONSE = "{\"op\":\"REPLY\",\"result\":{\"type\":\"104\",\"raw\":\"endpoint\",\"data\":null}}";
+
+    private String nymResponse;
+    private String attrResponse;
+
+    @Setup
+    public void setup() {
+        nymResponse = Fixtures.resource(Fixtures.NYM_RESPONSE);
+        attrResponse = Fixtures.resource(Fixtures.ATTR_RESPONSE);
+    }
+
+    @Benchmark
+    public ResolveResult resolveResult() {
+        return SovDriver.resolveResult(IDENTIFIER, "ubicua", 2, nymResponse, attrResponse);
+    }
+
+    @Benchmark
+    public ResolveResult resolveResultWithoutEndpoint() {
+        return SovDriver.resolveResult(IDENTIFIER, "ubicua", 2, nymResponse, NO_ATTR_RESPONSE);
+    }
+}
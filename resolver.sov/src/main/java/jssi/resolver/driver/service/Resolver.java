@@ -18,6 +18,10 @@
 package jssi.resolver.driver.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.gson.Gson;
+import java.util.concurrent.CompletionException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.Produces;
@@ -32,7 +36,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import jssi.resolver.driver.sov.SovConfig;
 import jssi.resolver.driver.sov.SovDriver;
-import uniresolver.ResolutionException;
 import uniresolver.result.ResolveResult;
 
 /**
@@ -45,6 +48,8 @@ import uniresolver.result.ResolveResult;
 public class Resolver {
     
     private static final Logger LOG = LoggerFactory.getLogger(Resolver.class);
+    
+    private static final Gson gson = new Gson();
 
     @Context
     private UriInfo context;
@@ -59,34 +64,65 @@ public class Resolver {
     }
 
     /**
-     * Retrieves representation of an instance of ubicua.resolver.driver.service.Resolver
+     * Retrieves representation of an instance of ubicua.resolver.driver.service.Resolver.
+     * The container thread is released while the ledger requests are in flight.
      * @param identifier
-     * @return an instance of java.lang.String
+     * @param asyncResponse
      */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("identifiers/{identifier}")
-    public Response getDidDocument(@PathParam("identifier") String identifier) {
+    public void getDidDocument(@PathParam("identifier") String identifier, @Suspended AsyncResponse asyncResponse) {
         
         SovDriver driver = new SovDriver(config);
-        try {
-            ResolveResult result = driver.resolve(identifier);
-            if(result == null){
-                return Response
-                    .status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity(String.format("Resolver result is null for %s", identifier))
-                    .build();
+        driver.resolveAsync(identifier).whenComplete((result, ex) -> {
+            if (ex != null) {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                asyncResponse.resume(toErrorResponse(identifier, cause));
+            } else {
+                asyncResponse.resume(toResponse(identifier, result));
             }
-            
+        });
+    }
+
+    /**
+     * Configuration of the pools and statistics of the ledger cache per
+     * network.
+     * @return the driver properties
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("properties")
+    public Response getProperties() {
+        return Response
+                .status(Response.Status.OK)
+                .entity(gson.toJson(new SovDriver(config).properties()))
+                .build();
+    }
+
+    private Response toResponse(String identifier, ResolveResult result) {
+        
+        if(result == null){
+            return Response
+                .status(Response.Status.INTERNAL_SERVER_ERROR)
+                .entity(String.format("Resolver result is null for %s", identifier))
+                .build();
+        }
+        
+        try {
             return Response
                 .status(Response.Status.OK)
                 .entity(result.toJson())
                 .build();
-        } catch (ResolutionException | JsonProcessingException ex){
-            return Response
-                    .status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity(String.format("Resolver problem for %s: %s", identifier, ex.getMessage()))
-                    .build();
+        } catch (JsonProcessingException ex){
+            return toErrorResponse(identifier, ex);
         }
     }
+
+    private Response toErrorResponse(String identifier, Throwable ex) {
+        return Response
+                .status(Response.Status.INTERNAL_SERVER_ERROR)
+                .entity(String.format("Resolver problem for %s: %s", identifier, ex.getMessage()))
+                .build();
+    }
 }
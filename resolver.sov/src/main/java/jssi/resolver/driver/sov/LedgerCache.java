@@ -0,0 +1,305 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.driver.sov;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache of the NYM and ATTR records of DIDs, parsed, with the sequence number
+ * and transaction time of each reply. An entry is reused for its time to
+ * live. In revalidation mode an expired entry is still returned while it is
+ * younger than twice the time to live, and the driver checks in the
+ * background whether the records changed: if their sequence numbers did not,
+ * the entry is renewed without parsing the replies again. Entries are
+ * evicted in LRU order beyond the maximum number of entries.
+ *
+ * @author UBICUA
+ */
+public class LedgerCache {
+
+    public static final long DEFAULT_TTL = 300000L;
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private final long ttl;
+    private final int maxEntries;
+    private final boolean revalidate;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * @param ttl time to live of the entries (milliseconds), 0 disables the cache
+     * @param maxEntries largest number of entries
+     * @param revalidate if expired entries are returned and revalidated
+     * @param networks networks of the pools, whose statistics are reported
+     * even before their first resolution
+     */
+    public LedgerCache(long ttl, int maxEntries, boolean revalidate, Collection<String> networks) {
+        this(ttl, maxEntries, revalidate, networks, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock current time (milliseconds)
+     */
+    LedgerCache(long ttl, int maxEntries, boolean revalidate, Collection<String> networks, LongSupplier clock) {
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+        this.revalidate = revalidate;
+        this.clock = clock;
+        for (String network : networks) {
+            stats.put(network, new Stats());
+        }
+    }
+
+    public boolean isEnabled() {
+        return ttl > 0 && maxEntries > 0;
+    }
+
+    public boolean isRevalidate() {
+        return revalidate;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    /**
+     * Cached records of the DID, or null if missing or too old.
+     */
+    public Entry get(String network, String did) {
+
+        if (!isEnabled()) {
+            return null;
+        }
+
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key(network, did));
+        }
+
+        Stats networkStats = stats(network);
+        long age = entry == null ? Long.MAX_VALUE : clock.getAsLong() - entry.cached;
+
+        if (age < ttl) {
+            networkStats.hits.increment();
+            return entry;
+        }
+        if (revalidate && age < 2 * ttl) {
+            networkStats.staleHits.increment();
+            return entry;
+        }
+
+        networkStats.misses.increment();
+        return null;
+    }
+
+    /**
+     * True if the entry is past its time to live and must be revalidated.
+     */
+    public boolean isStale(Entry entry) {
+        return clock.getAsLong() - entry.cached >= ttl;
+    }
+
+    /**
+     * Stores the entry, whose time to live starts now.
+     */
+    public void put(String network, String did, Entry entry) {
+
+        if (!isEnabled()) {
+            return;
+        }
+
+        synchronized (this) {
+            entry.cached = clock.getAsLong();
+            entries.put(key(network, did), entry);
+            while (entries.size() > maxEntries) {
+                entries.remove(entries.keySet().iterator().next());
+            }
+        }
+    }
+
+    /**
+     * Stores the outcome of a revalidation: the renewed entry if the records
+     * did not change, otherwise the fresh entry, or removes the entry if the
+     * DID is not found anymore.
+     */
+    public void revalidated(String network, String did, Entry revalidated, boolean changed) {
+
+        Stats networkStats = stats(network);
+        networkStats.revalidations.increment();
+        if (changed) {
+            networkStats.changes.increment();
+        }
+
+        if (revalidated == null) {
+            synchronized (this) {
+                entries.remove(key(network, did));
+            }
+        } else {
+            put(network, did, revalidated);
+        }
+    }
+
+    /**
+     * Hits, stale hits, misses, revalidations and changed records per network.
+     */
+    public Map<String, Object> stats() {
+
+        Map<String, Object> networks = new LinkedHashMap<>();
+        for (Map.Entry<String, Stats> networkStats : stats.entrySet()) {
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("hits", networkStats.getValue().hits.sum());
+            values.put("staleHits", networkStats.getValue().staleHits.sum());
+            values.put("misses", networkStats.getValue().misses.sum());
+            values.put("revalidations", networkStats.getValue().revalidations.sum());
+            values.put("changes", networkStats.getValue().changes.sum());
+            networks.put(networkStats.getKey(), values);
+        }
+
+        Map<String, Object> cacheStats = new LinkedHashMap<>();
+        cacheStats.put("enabled", isEnabled());
+        cacheStats.put("ttl", ttl);
+        cacheStats.put("revalidate", revalidate);
+        synchronized (this) {
+            cacheStats.put("entries", entries.size());
+        }
+        cacheStats.put("networks", networks);
+        return cacheStats;
+    }
+
+    /*
+     * Helper methods
+     */
+    private Stats stats(String network) {
+        return stats.computeIfAbsent(network, name -> new Stats());
+    }
+
+    private static String key(String network, String did) {
+        return network + ":" + did;
+    }
+
+    private static long number(JsonObject response, String name) {
+
+        JsonObject result = response == null ? null : response.getAsJsonObject("result");
+        JsonElement value = result == null ? null : result.get(name);
+        return value == null || !value.isJsonPrimitive() ? -1L : value.getAsLong();
+    }
+
+    /**
+     * Parsed GET_NYM and GET_ATTR replies of a DID.
+     */
+    public static class Entry {
+
+        private final JsonObject nymResponse;
+        private final JsonObject nymData;
+        private final JsonObject attrResponse;
+        private final JsonObject attrData;
+        private final long nymSeqNo;
+        private final long nymTxnTime;
+        private final long attrSeqNo;
+        private final long attrTxnTime;
+        private long cached;
+        private final AtomicBoolean revalidating = new AtomicBoolean();
+
+        public Entry(JsonObject nymResponse, JsonObject nymData, JsonObject attrResponse, JsonObject attrData) {
+            this.nymResponse = nymResponse;
+            this.nymData = nymData;
+            this.attrResponse = attrResponse;
+            this.attrData = attrData;
+            this.nymSeqNo = number(nymResponse, "seqNo");
+            this.nymTxnTime = number(nymResponse, "txnTime");
+            this.attrSeqNo = number(attrResponse, "seqNo");
+            this.attrTxnTime = number(attrResponse, "txnTime");
+        }
+
+        /**
+         * True if the replies hold the same records as this entry.
+         */
+        public boolean isSame(JsonObject nymResponse, JsonObject attrResponse) {
+            return nymSeqNo == number(nymResponse, "seqNo") && nymTxnTime == number(nymResponse, "txnTime")
+                    && attrSeqNo == number(attrResponse, "seqNo") && attrTxnTime == number(attrResponse, "txnTime");
+        }
+
+        /**
+         * Copy of the entry, whose time to live starts over once stored.
+         */
+        public Entry renewed() {
+            return new Entry(nymResponse, nymData, attrResponse, attrData);
+        }
+
+        /**
+         * Claims the revalidation of the entry, false if already claimed.
+         */
+        public boolean startRevalidation() {
+            return revalidating.compareAndSet(false, true);
+        }
+
+        public void endRevalidation() {
+            revalidating.set(false);
+        }
+
+        public JsonObject getNymResponse() {
+            return nymResponse;
+        }
+
+        public JsonObject getNymData() {
+            return nymData;
+        }
+
+        public JsonObject getAttrResponse() {
+            return attrResponse;
+        }
+
+        public JsonObject getAttrData() {
+            return attrData;
+        }
+
+        public long getNymSeqNo() {
+            return nymSeqNo;
+        }
+
+        public long getNymTxnTime() {
+            return nymTxnTime;
+        }
+
+        public long getAttrSeqNo() {
+            return attrSeqNo;
+        }
+
+        public long getAttrTxnTime() {
+            return attrTxnTime;
+        }
+    }
+
+    private static class Stats {
+
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder staleHits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder revalidations = new LongAdder();
+        private final LongAdder changes = new LongAdder();
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.driver.sov;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * State of the pool of a network: whether its handle is open, and the
+ * outcome and latency of the last ledger requests. An open pool is dead
+ * after a number of consecutive failed requests, and the supervisor of
+ * SovConfig opens it again. Availability and latency are computed over the
+ * requests in the sliding window.
+ *
+ * @author UBICUA
+ */
+public class PoolHealth {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PoolHealth.class);
+
+    public static final int DEFAULT_WINDOW_SIZE = 20;
+    public static final int DEFAULT_DEAD_AFTER = 5;
+
+    private final String network;
+    private final int windowSize;
+    private final int deadAfter;
+
+    private final boolean[] failures;
+    private final long[] latencies;
+    private int position = 0;
+    private int requests = 0;
+    private int consecutiveFailures = 0;
+    private boolean open = false;
+    private long opened = 0L;
+    private long openLatency = -1L;
+    private int reconnects = 0;
+    private String lastError = null;
+
+    /**
+     * @param network name of the pool, for logging
+     * @param windowSize number of requests in the sliding window
+     * @param deadAfter consecutive failed requests making the pool dead
+     */
+    public PoolHealth(String network, int windowSize, int deadAfter) {
+
+        if (windowSize < 1 || deadAfter < 1) {
+            throw new IllegalArgumentException("Health window and dead threshold must be positive");
+        }
+
+        this.network = network;
+        this.windowSize = windowSize;
+        this.deadAfter = deadAfter;
+        this.failures = new boolean[windowSize];
+        this.latencies = new long[windowSize];
+    }
+
+    /**
+     * The pool handle was opened, the window starts over.
+     */
+    public synchronized void onOpen(long latency) {
+
+        if (opened != 0L) {
+            reconnects++;
+        }
+
+        open = true;
+        opened = System.currentTimeMillis();
+        openLatency = latency;
+        position = 0;
+        requests = 0;
+        consecutiveFailures = 0;
+        lastError = null;
+    }
+
+    public synchronized void onOpenFailure(String error) {
+
+        open = false;
+        lastError = error;
+    }
+
+    public synchronized void onSuccess(long latency) {
+
+        if (consecutiveFailures >= deadAfter && LOG.isInfoEnabled()) {
+            LOG.info(String.format("Pool %s answers again (latency %d ms)", network, latency));
+        }
+
+        record(false, latency);
+        consecutiveFailures = 0;
+    }
+
+    public synchronized void onFailure(long latency, String error) {
+
+        record(true, latency);
+        lastError = error;
+
+        if (++consecutiveFailures == deadAfter && LOG.isWarnEnabled()) {
+            LOG.warn(String.format("Pool %s is dead after %d failed requests: %s", network, consecutiveFailures, error));
+        }
+    }
+
+    /**
+     * True if the pool has no open handle or failed "deadAfter" requests in
+     * a row.
+     */
+    public synchronized boolean isDead() {
+        return !open || consecutiveFailures >= deadAfter;
+    }
+
+    /**
+     * Successful requests in the window, 1.0 before the first request.
+     */
+    public synchronized double getAvailability() {
+
+        if (requests == 0) {
+            return 1.0;
+        }
+
+        int failed = 0;
+        for (int i = 0; i < requests; i++) {
+            failed += failures[i] ? 1 : 0;
+        }
+        return (double) (requests - failed) / requests;
+    }
+
+    /**
+     * Mean latency of the successful requests in the window (milliseconds),
+     * or -1 if none.
+     */
+    public synchronized long getLatency() {
+
+        long total = 0L;
+        int count = 0;
+        for (int i = 0; i < requests; i++) {
+            if (!failures[i]) {
+                total += latencies[i];
+                count++;
+            }
+        }
+        return count == 0 ? -1L : total / count;
+    }
+
+    public synchronized Map<String, Object> stats() {
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("open", open);
+        stats.put("dead", isDead());
+        stats.put("opened", opened);
+        stats.put("openLatency", openLatency);
+        stats.put("reconnects", reconnects);
+        stats.put("requests", requests);
+        stats.put("availability", getAvailability());
+        stats.put("latency", getLatency());
+        if (lastError != null) {
+            stats.put("lastError", lastError);
+        }
+        return stats;
+    }
+
+    /*
+     * Helper methods
+     */
+    private void record(boolean failure, long latency) {
+
+        failures[position] = failure;
+        latencies[position] = latency;
+        position = (position + 1) % windowSize;
+        requests = Math.min(requests + 1, windowSize);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.driver.sov;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Permits of the resolutions in flight on a pool, acquired without blocking:
+ * a resolution gets a future completed once it holds a permit. Waiters are
+ * served in arrival order as permits are released. A waiter completed or
+ * cancelled before it got a permit, e.g. by the deadline of its resolution,
+ * leaves the queue.
+ *
+ * @author UBICUA
+ */
+public class PoolPermits {
+
+    private final int permits;
+    private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private int available;
+
+    public PoolPermits(int permits) {
+
+        if (permits < 1) {
+            throw new IllegalArgumentException("Pool concurrency must be positive");
+        }
+
+        this.permits = permits;
+        this.available = permits;
+    }
+
+    /**
+     * Future completed when the caller holds a permit, at once if one is
+     * free. Once completed normally, the permit must be released.
+     */
+    public CompletableFuture<Void> acquire() {
+
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        synchronized (this) {
+            if (available > 0) {
+                available--;
+                waiter.complete(null);
+                return waiter;
+            }
+            waiters.add(waiter);
+        }
+
+        waiter.whenComplete((ignored, ex) -> {
+            if (ex != null) {
+                synchronized (this) {
+                    waiters.remove(waiter);
+                }
+            }
+        });
+        return waiter;
+    }
+
+    /**
+     * Takes a free permit if there is one, without queueing.
+     */
+    public synchronized boolean tryAcquire() {
+
+        if (available > 0) {
+            available--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gives the permit to the first waiter, or back to the pool.
+     */
+    public void release() {
+
+        while (true) {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                next = waiters.poll();
+                if (next == null) {
+                    available = Math.min(available + 1, permits);
+                    return;
+                }
+            }
+
+            // the waiter continues on this thread, outside the lock
+            if (next.complete(null)) {
+                return;
+            }
+        }
+    }
+
+    public synchronized int availablePermits() {
+        return available;
+    }
+
+    public synchronized int getQueueLength() {
+        return waiters.size();
+    }
+}
@@ -24,9 +24,20 @@ import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Stream;
 import javax.enterprise.context.ApplicationScoped;
 import org.apache.commons.configuration2.Configuration;
@@ -56,12 +67,25 @@ public class SovConfig implements Serializable{
     
     private static final Logger LOG = LoggerFactory.getLogger(SovConfig.class);
     
+    public static final int DEFAULT_POOL_CONCURRENCY = 64;
+    public static final long DEFAULT_POOL_TIMEOUT = 10000L;
+    public static final long DEFAULT_OPEN_TIMEOUT = 60000L;
+    public static final long DEFAULT_CHECK_INTERVAL = 30000L;
+    
     private final FileBasedConfigurationBuilder<FileBasedConfiguration> builder
             = new FileBasedConfigurationBuilder<>(PropertiesConfiguration.class);
     
-    private final Map<String, Pool> poolMap = new HashMap<>();
-    private final Map<String, Integer> poolVersionMap = new HashMap<>();
+    private final Map<String, Pool> poolMap = new ConcurrentHashMap<>();
+    private final Map<String, Integer> poolVersionMap = new ConcurrentHashMap<>();
+    private final Map<String, PoolHealth> poolHealth = new ConcurrentHashMap<>();
+    // pools being opened, at start up or by the supervisor
+    private final Set<String> openingPools = ConcurrentHashMap.newKeySet();
+    private transient ScheduledExecutorService supervisor;
+    private final Map<String, PoolPermits> poolPermits = new HashMap<>();
+    private final Map<String, Long> poolTimeouts = new HashMap<>();
     private Wallet wallet;
+    private boolean signed = true;
+    private LedgerCache ledgerCache = new LedgerCache(0L, 0, false, Collections.emptyList());
     private Configuration config = null;
     
     public void init(String path){
@@ -83,19 +107,56 @@ public class SovConfig implements Serializable{
         LibIndy.init(indy);
         
         String[] configs = config.getStringArray("resolver.config");
+        int concurrency = config.getInt("resolver.pool.concurrency", DEFAULT_POOL_CONCURRENCY);
+        long timeout = config.getLong("resolver.pool.timeout", DEFAULT_POOL_TIMEOUT);
+        int deadAfter = config.getInt("resolver.pool.deadAfter", PoolHealth.DEFAULT_DEAD_AFTER);
         
+        // the ledger configs are created one by one, the pools are opened at once
+        List<CompletableFuture<Pool>> opening = new ArrayList<>();
         for(String item : configs){
             String[] items = item.split(",");
             String name = items[0].strip();
             int version = Integer.parseInt(items[1].strip());
             String genesis = items[2].strip();
-            Pool pool = openPool(version, name, genesis);
-            poolMap.put(name, pool);
             poolVersionMap.put(name, version);
+            poolPermits.put(name, new PoolPermits(config.getInt("resolver.pool." + name + ".concurrency", concurrency)));
+            poolTimeouts.put(name, config.getLong("resolver.pool." + name + ".timeout", timeout));
+            poolHealth.put(name, new PoolHealth(name, PoolHealth.DEFAULT_WINDOW_SIZE, deadAfter));
+            configPool(version, name, genesis);
+            openingPools.add(name);
+            opening.add(openPool(name).whenComplete((opened, ex) -> openingPools.remove(name)));
+        }
+        
+        try {
+            CompletableFuture.allOf(opening.toArray(new CompletableFuture<?>[0])).get(config.getLong("resolver.pool.openTimeout", DEFAULT_OPEN_TIMEOUT), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ex) {
+            LOG.warn(String.format("Not every pool is open: %s", ex.getMessage()));
         }
         
         LOG.info(String.format("Opened %d pools: %s", poolMap.size(), poolMap.keySet()));
         
+        long checkInterval = config.getLong("resolver.pool.checkInterval", DEFAULT_CHECK_INTERVAL);
+        supervisor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sov-pool-supervisor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        supervisor.scheduleWithFixedDelay(this::supervise, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+        
+        ledgerCache = new LedgerCache(
+                config.getLong("resolver.cache.ttl", LedgerCache.DEFAULT_TTL / 1000) * 1000,
+                config.getInt("resolver.cache.maxEntries", LedgerCache.DEFAULT_MAX_ENTRIES),
+                config.getBoolean("resolver.cache.revalidate", false),
+                poolVersionMap.keySet());
+        
+        signed = config.getBoolean("resolver.sign", true);
+        if (!signed) {
+            LOG.info("Read requests are sent unsigned, the resolver wallet is not opened");
+            return;
+        }
+        
         String walletId = config.getString("wallet.resolver.id");
         String walletKey = config.getString("wallet.resolver.key");
         
@@ -106,10 +167,9 @@ public class SovConfig implements Serializable{
         }
     }
     
-    private Pool openPool(int version, String name, String genesis){
+    private void configPool(int version, String name, String genesis){
         LOG.debug(String.format("Pool name: %s", name));
 
-        Pool pool = null;
         File file = new File(genesis);
         StringBuilder builder = new StringBuilder();
         try {
@@ -117,23 +177,83 @@ public class SovConfig implements Serializable{
             stream.forEach(s -> builder.append(s).append("\n"));
             LOG.debug(String.format("Genesis pool definition:\n%s", builder.toString()));
             configPool(version, name, file);
-            pool = Pool.openPoolLedger(name, null).get();
-            LOG.debug(String.format("Open pool: %s", name));
-        } catch (IOException | IndyException | InterruptedException | ExecutionException e) {
-            LOG.debug("Open pool exception", e);
+        } catch (IOException e) {
+            LOG.debug("Genesis pool exception", e);
         }
-        return pool;
     }
     
-    public void closePools() {
+    /**
+     * Opens the pool of a network without waiting for it. The handle is put
+     * in the pool map once open; a pool that cannot be opened is left out
+     * and opened again by the supervisor.
+     */
+    private CompletableFuture<Pool> openPool(String name) {
+        
+        long start = System.nanoTime();
+        CompletableFuture<Pool> pool;
         try {
-            for (Pool pool : poolMap.values()) {
-                if(pool != null){
-                    pool.close();
+            pool = Pool.openPoolLedger(name, null);
+        } catch (IndyException ex) {
+            pool = CompletableFuture.failedFuture(ex);
+        }
+        
+        return pool.whenComplete((opened, ex) -> {
+            PoolHealth health = poolHealth.get(name);
+            if (ex == null) {
+                poolMap.put(name, opened);
+                health.onOpen((System.nanoTime() - start) / 1000000);
+                LOG.info(String.format("Open pool: %s", name));
+            } else {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                health.onOpenFailure(cause.getMessage());
+                LOG.warn(String.format("Cannot open pool %s: %s", name, cause.getMessage()));
+            }
+        });
+    }
+    
+    /**
+     * Opens again the pools without handle or failing their requests. The
+     * dead handle is taken out of the pool map and closed first, since
+     * libindy does not open a pool twice; resolutions on the network fail
+     * fast until the new handle is put in the map.
+     */
+    private void supervise() {
+        
+        for (String name : poolVersionMap.keySet()) {
+            PoolHealth health = poolHealth.get(name);
+            if (health == null || !health.isDead() || !openingPools.add(name)) {
+                continue;
+            }
+            
+            LOG.info(String.format("Reopening pool: %s", name));
+            try {
+                Pool dead = poolMap.remove(name);
+                if (dead != null) {
+                    closePool(name, dead);
                 }
+                openPool(name).whenComplete((opened, ex) -> openingPools.remove(name));
+            } catch (RuntimeException ex) {
+                // the supervisor must keep running
+                openingPools.remove(name);
+                LOG.warn(String.format("Cannot reopen pool %s: %s", name, ex.getMessage()));
             }
+        }
+    }
+    
+    public void closePools() {
+        if (supervisor != null) {
+            supervisor.shutdownNow();
+        }
+        for (Map.Entry<String, Pool> pool : poolMap.entrySet()) {
+            closePool(pool.getKey(), pool.getValue());
+        }
+    }
+    
+    private void closePool(String name, Pool pool) {
+        try {
+            pool.close();
         } catch (ExecutionException | IndyException | InterruptedException e) {
-            LOG.debug("Pool close exception", e);
+            LOG.debug(String.format("Pool close exception: %s", name), e);
         }
     }
     
@@ -215,6 +335,36 @@ public class SovConfig implements Serializable{
         return poolVersionMap;
     }
 
+    /**
+     * Permits of the resolutions in flight on the pool of a network.
+     */
+    public PoolPermits getPoolPermits(String network) {
+        return poolPermits.get(network);
+    }
+
+    /**
+     * Time after which a resolution on the pool of a network fails
+     * (milliseconds), 0 for none.
+     */
+    public long getPoolTimeout(String network) {
+        return poolTimeouts.getOrDefault(network, DEFAULT_POOL_TIMEOUT);
+    }
+
+    /**
+     * Cache of the NYM and ATTR records of the resolved DIDs.
+     */
+    public LedgerCache getLedgerCache() {
+        return ledgerCache;
+    }
+
+    /**
+     * Open state, reconnects, availability and latency of the pool of a
+     * network.
+     */
+    public PoolHealth getPoolHealth(String network) {
+        return poolHealth.get(network);
+    }
+
     public Wallet getWallet() {
         return wallet;
     }
@@ -222,4 +372,13 @@ public class SovConfig implements Serializable{
     public String getResolverDid(){
         return config.getString("resolver.did");
     }
+    
+    /**
+     * True if the read requests are signed with the resolver wallet and DID,
+     * false if they are submitted unsigned. Unsigned requests still carry the
+     * resolver DID as submitter when it is configured.
+     */
+    public boolean isSigned(){
+        return signed;
+    }
 }
@@ -19,7 +19,10 @@ package jssi.resolver.driver.sov;
 
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -64,84 +67,295 @@ public class SovDriver implements Driver {
     @Override
     public ResolveResult resolve(String identifier) throws ResolutionException {
 
+        try {
+            return resolveAsync(identifier).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ResolutionException("Interrupted resolving " + identifier, ex);
+        } catch (ExecutionException ex) {
+            throw resolutionException(ex.getCause());
+        }
+    }
+
+    /**
+     * Resolves the identifier within the timeout of its pool.
+     */
+    public CompletableFuture<ResolveResult> resolveAsync(String identifier) {
+        return resolveAsync(identifier, -1L);
+    }
+
+    /**
+     * Resolves the identifier without blocking on the ledger: the GET_NYM and
+     * GET_ATTR requests are sent at once on the futures of libindy, and the
+     * GET_ATTR reply is only used if the DID has a NYM. A resolution holds a
+     * permit of its pool until both replies arrived. When the pool has as many
+     * resolutions in flight as its configured concurrency, the resolution is
+     * queued until a permit is released, without blocking the caller, and at
+     * most until the deadline. Records found in the ledger cache are returned
+     * without any request.
+     * <p>
+     * The future fails with a ResolutionException once the timeout passed,
+     * the wait for a permit included;
+     * completing or cancelling it drops the replies, a request already sent to
+     * the ledger cannot be withdrawn.
+     *
+     * @param timeout deadline of the caller (milliseconds), 0 for none, or
+     * negative for the timeout of the pool
+     */
+    public CompletableFuture<ResolveResult> resolveAsync(String identifier, long timeout) {
+
         // open pool
-        synchronized (this) {
-            if (config.getPoolMap().isEmpty() || config.getPoolVersionMap().isEmpty() || config.getWallet() == null || config.getResolverDid() == null) {
-                throw new ResolutionException("General error resolver initialization");
-            }
+        if (config.getPoolMap().isEmpty() || config.getPoolVersionMap().isEmpty() || (config.isSigned() && (config.getWallet() == null || config.getResolverDid() == null))) {
+            return CompletableFuture.failedFuture(new ResolutionException("General error resolver initialization"));
         }
 
         // parse identifier
         Matcher matcher = DID_SOV_PATTERN.matcher(identifier);
         if (!matcher.matches()) {
-            return null;
+            return CompletableFuture.completedFuture(null);
         }
 
-        String network = matcher.group(1);
+        String parsedNetwork = matcher.group(1);
         String targetDid = matcher.group(2);
-        if (network == null || network.trim().isEmpty()) {
-            network = "ubicua";
-        }
+        String network = (parsedNetwork == null || parsedNetwork.trim().isEmpty()) ? "ubicua" : parsedNetwork;
 
         // find pool version
         Integer poolVersion = config.getPoolVersionMap().get(network);
         if (poolVersion == null) {
-            throw new ResolutionException("No pool version for network: " + network);
+            return CompletableFuture.failedFuture(new ResolutionException("No pool version for network: " + network));
         }
 
         // find pool
         Pool pool = config.getPoolMap().get(network);
         if (pool == null) {
-            throw new ResolutionException("No pool for network: " + network);
+            return CompletableFuture.failedFuture(new ResolutionException("No pool for network: " + network));
         }
 
-        // send GET_NYM request
-        String getNymResponse;
+        long deadline = timeout < 0 ? config.getPoolTimeout(network) : timeout;
+        PoolPermits permits = config.getPoolPermits(network);
+        LedgerCache cache = config.getLedgerCache();
 
-        try {
-            synchronized (this) {
-                String getNymRequest = Ledger.buildGetNymRequest(config.getResolverDid(), targetDid).get();
-                getNymResponse = Ledger.signAndSubmitRequest(pool, config.getWallet(), config.getResolverDid(), getNymRequest).get();
+        // cached records, revalidated in the background once expired
+        LedgerCache.Entry cached = cache.get(network, targetDid);
+        if (cached != null) {
+            if (cache.isStale(cached) && cached.startRevalidation()) {
+                revalidate(pool, network, permits, cache, targetDid, cached);
             }
-        } catch (IndyException | InterruptedException | ExecutionException ex) {
-            throw new ResolutionException("Cannot send GET_NYM request: " + ex.getMessage(), ex);
+            return CompletableFuture.completedFuture(resolveResult(identifier, network, poolVersion, cached));
         }
 
-        if (LOG.isInfoEnabled()) {
-            LOG.info("GET_NYM for " + targetDid + ": " + getNymResponse);
+        // a busy pool queues the resolution, the wait for a permit counts toward the deadline
+        CompletableFuture<Void> permit = permits.acquire();
+
+        CompletableFuture<ResolveResult> resolveResult = permit.thenCompose(acquired -> fetch(pool, network, permits, targetDid, null)).thenApply(entry -> {
+
+            if (entry == null) {
+                return null;
+            }
+
+            cache.put(network, targetDid, entry);
+            return resolveResult(identifier, network, poolVersion, entry);
+        });
+
+        // a resolution completed or cancelled while queued gives up its place
+        resolveResult.whenComplete((result, ex) -> {
+            if (ex != null) {
+                permit.cancel(false);
+            }
+        });
+
+        if (deadline > 0) {
+            CompletableFuture.delayedExecutor(deadline, TimeUnit.MILLISECONDS).execute(() -> {
+                permit.completeExceptionally(new ResolutionException("Pool busy, no permit within " + deadline + " ms: " + network));
+                resolveResult.completeExceptionally(new ResolutionException("Timeout after " + deadline + " ms resolving " + identifier));
+            });
         }
 
-        // GET_NYM response data
+        return resolveResult;
+    }
+
+    /**
+     * Configuration and health of the pools and statistics of the ledger
+     * cache per network.
+     */
+    @Override
+    public Map<String, Object> properties() {
+
+        Map<String, Object> networks = new LinkedHashMap<>();
+        for (String network : config.getPoolVersionMap().keySet()) {
+            Map<String, Object> pool = new LinkedHashMap<>();
+            pool.put("poolVersion", config.getPoolVersionMap().get(network));
+            pool.put("timeout", config.getPoolTimeout(network));
+            PoolPermits permits = config.getPoolPermits(network);
+            if (permits != null) {
+                pool.put("availablePermits", permits.availablePermits());
+                pool.put("queuedResolutions", permits.getQueueLength());
+            }
+            PoolHealth health = config.getPoolHealth(network);
+            if (health != null) {
+                pool.put("health", health.stats());
+            }
+            networks.put(network, pool);
+        }
+
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("signed", config.isSigned());
+        properties.put("networks", networks);
+        properties.put("cache", config.getLedgerCache().stats());
+        return properties;
+    }
+
+    /**
+     * Builds the resolve result of a DID from the GET_NYM and GET_ATTR replies
+     * of the ledger, or returns null if the DID has no NYM.
+     */
+    public static ResolveResult resolveResult(String identifier, String network, Integer poolVersion, String getNymResponse, String getAttrResponse) {
+
         JsonObject jsonGetNymResponse = gson.fromJson(getNymResponse, JsonObject.class);
-        JsonObject jsonGetNymResult = jsonGetNymResponse == null ? null : jsonGetNymResponse.getAsJsonObject("result");
-        JsonElement jsonGetNymData = jsonGetNymResult == null ? null : jsonGetNymResult.get("data");
-        JsonObject jsonGetNymDataContent = (jsonGetNymData == null || jsonGetNymData instanceof JsonNull) ? null : gson.fromJson(jsonGetNymData.getAsString(), JsonObject.class);
+        JsonObject jsonGetNymDataContent = data(jsonGetNymResponse);
 
         if (jsonGetNymDataContent == null) {
             return null;
         }
 
-        // send GET_ATTR request
-        String getAttrResponse;
+        JsonObject jsonGetAttrResponse = gson.fromJson(getAttrResponse, JsonObject.class);
+
+        return resolveResult(identifier, network, poolVersion, jsonGetNymResponse, jsonGetNymDataContent, jsonGetAttrResponse, data(jsonGetAttrResponse));
+    }
 
+    /*
+     * Helper methods
+     */
+    /**
+     * Sends the GET_NYM and GET_ATTR requests of the DID at once, a permit of
+     * the pool being held, and releases the permit once both replies arrived.
+     * The health of the pool records the replies the resolution uses: the
+     * GET_ATTR reply of a DID without NYM does not count. The records are null
+     * if the DID has no NYM, the cached entry renewed if its records did not
+     * change.
+     */
+    private CompletableFuture<LedgerCache.Entry> fetch(Pool pool, String network, PoolPermits permits, String targetDid, LedgerCache.Entry cached) {
+
+        // send GET_NYM and GET_ATTR requests
+        long start = System.nanoTime();
+        CompletableFuture<String> getNymResponse;
+        CompletableFuture<String> getAttrResponse;
         try {
-            synchronized (this) {
-                String getAttrRequest = Ledger.buildGetAttribRequest(config.getResolverDid(), targetDid, "endpoint", null, null).get();
-                getAttrResponse = Ledger.signAndSubmitRequest(pool, config.getWallet(), config.getResolverDid(), getAttrRequest).get();
+            getNymResponse = submit(pool, "GET_NYM", () -> Ledger.buildGetNymRequest(config.getResolverDid(), targetDid));
+            getAttrResponse = submit(pool, "GET_ATTR", () -> Ledger.buildGetAttribRequest(config.getResolverDid(), targetDid, "endpoint", null, null));
+        } catch (RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+
+        // the permit is held until the ledger replied to both requests, even if the resolution ended before
+        CompletableFuture.allOf(getNymResponse, getAttrResponse).whenComplete((ignored, ex) -> permits.release());
+
+        CompletableFuture<LedgerCache.Entry> entry = getNymResponse.thenCompose(nymResponse -> {
+
+            if (LOG.isInfoEnabled()) {
+                LOG.info("GET_NYM for " + targetDid + ": " + nymResponse);
+            }
+
+            // GET_NYM response data
+            JsonObject jsonGetNymResponse = gson.fromJson(nymResponse, JsonObject.class);
+
+            // not found, the GET_ATTR reply is discarded
+            if (!hasData(jsonGetNymResponse)) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            return getAttrResponse.thenApply(attrResponse -> {
+
+                if (LOG.isInfoEnabled()) {
+                    LOG.info("GET_ATTR for " + targetDid + ": " + attrResponse);
+                }
+
+                // GET_ATTR response data
+                JsonObject jsonGetAttrResponse = gson.fromJson(attrResponse, JsonObject.class);
+
+                // unchanged records are not parsed again
+                if (cached != null && cached.isSame(jsonGetNymResponse, jsonGetAttrResponse)) {
+                    return cached.renewed();
+                }
+
+                return new LedgerCache.Entry(jsonGetNymResponse, data(jsonGetNymResponse), jsonGetAttrResponse, data(jsonGetAttrResponse));
+            });
+        });
+
+        entry.whenComplete((fetched, ex) -> {
+            PoolHealth health = config.getPoolHealth(network);
+            if (health != null) {
+                long latency = (System.nanoTime() - start) / 1000000;
+                if (ex == null) {
+                    health.onSuccess(latency);
+                } else {
+                    health.onFailure(latency, resolutionException(ex).getMessage());
+                }
             }
-        } catch (IndyException | InterruptedException | ExecutionException ex) {
-            throw new ResolutionException("Cannot send GET_NYM request: " + ex.getMessage(), ex);
+        });
+
+        return entry;
+    }
+
+    private void revalidate(Pool pool, String network, PoolPermits permits, LedgerCache cache, String targetDid, LedgerCache.Entry cached) {
+
+        // a background revalidation never waits for a permit
+        if (!permits.tryAcquire()) {
+            cached.endRevalidation();
+            return;
         }
 
-        if (LOG.isInfoEnabled()) {
-            LOG.info("GET_ATTR for " + targetDid + ": " + getAttrResponse);
+        fetch(pool, network, permits, targetDid, cached).whenComplete((entry, ex) -> {
+            try {
+                if (ex != null) {
+                    if (LOG.isWarnEnabled()) {
+                        LOG.warn(String.format("Cannot revalidate %s on %s: %s", targetDid, network, resolutionException(ex).getMessage()));
+                    }
+                } else {
+                    cache.revalidated(network, targetDid, entry, entry == null || !cached.isSame(entry.getNymResponse(), entry.getAttrResponse()));
+                }
+            } finally {
+                cached.endRevalidation();
+            }
+        });
+    }
+
+    private static ResolveResult resolveResult(String identifier, String network, Integer poolVersion, LedgerCache.Entry entry) {
+        return resolveResult(identifier, network, poolVersion, entry.getNymResponse(), entry.getNymData(), entry.getAttrResponse(), entry.getAttrData());
+    }
+
+    private CompletableFuture<String> submit(Pool pool, String type, LedgerRequest request) {
+
+        CompletableFuture<String> response;
+        try {
+            response = request.build().thenCompose(built -> {
+                try {
+                    // read requests need no signature, unsigned they do not touch the wallet
+                    return config.isSigned()
+                            ? Ledger.signAndSubmitRequest(pool, config.getWallet(), config.getResolverDid(), built)
+                            : Ledger.submitRequest(pool, built);
+                } catch (IndyException ex) {
+                    throw new CompletionException(ex);
+                }
+            });
+        } catch (IndyException ex) {
+            response = CompletableFuture.failedFuture(ex);
         }
 
-        // GET_ATTR response data
-        JsonObject jsonGetAttrResponse = gson.fromJson(getAttrResponse, JsonObject.class);
-        JsonObject jsonGetAttrResult = jsonGetAttrResponse == null ? null : jsonGetAttrResponse.getAsJsonObject("result");
-        JsonElement jsonGetAttrData = jsonGetAttrResult == null ? null : jsonGetAttrResult.get("data");
-        JsonObject jsonGetAttrDataContent = (jsonGetAttrData == null || jsonGetAttrData instanceof JsonNull) ? null : gson.fromJson(jsonGetAttrData.getAsString(), JsonObject.class);
+        return response.exceptionally(ex -> {
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            throw new CompletionException(new ResolutionException("Cannot send " + type + " request: " + cause.getMessage(), cause));
+        });
+    }
+
+    private static ResolutionException resolutionException(Throwable ex) {
+
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        return cause instanceof ResolutionException ? (ResolutionException) cause : new ResolutionException(cause.getMessage(), cause);
+    }
+
+    private static ResolveResult resolveResult(String identifier, String network, Integer poolVersion, JsonObject jsonGetNymResponse, JsonObject jsonGetNymDataContent, JsonObject jsonGetAttrResponse, JsonObject jsonGetAttrDataContent) {
 
         // DID DOCUMENT did
         String did = identifier;
@@ -212,14 +426,23 @@ public class SovDriver implements Driver {
         return resolveResult;
     }
 
-    @Override
-    public Map<String, Object> properties() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    /**
+     * Content of the "data" string of a ledger reply, or null if empty.
+     */
+    private static JsonObject data(JsonObject jsonResponse) {
+        return hasData(jsonResponse) ? gson.fromJson(jsonResponse.getAsJsonObject("result").get("data").getAsString(), JsonObject.class) : null;
     }
 
-    /*
-     * Helper methods
+    /**
+     * True if a ledger reply has a "data" string, without parsing it.
      */
+    private static boolean hasData(JsonObject jsonResponse) {
+
+        JsonObject jsonResult = jsonResponse == null ? null : jsonResponse.getAsJsonObject("result");
+        JsonElement jsonData = jsonResult == null ? null : jsonResult.get("data");
+        return jsonData != null && !(jsonData instanceof JsonNull);
+    }
+
     private static String expandVerkey(String did, String verkey) {
 
         if (verkey == null || !did.startsWith("did:sov:") || !verkey.startsWith("~")) {
@@ -240,4 +463,13 @@ public class SovDriver implements Driver {
 
         return didVerkey;
     }
+
+    /**
+     * Builds a ledger request, the future of libindy holds the request JSON.
+     */
+    @FunctionalInterface
+    private interface LedgerRequest {
+
+        CompletableFuture<String> build() throws IndyException;
+    }
 }
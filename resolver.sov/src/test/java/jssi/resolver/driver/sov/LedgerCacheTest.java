@@ -0,0 +1,219 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.driver.sov;
+
+import com.google.gson.JsonObject;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Expiration, stale-while-revalidate and LRU eviction of the ledger cache,
+ * with a clock advanced by the test.
+ *
+ * @author UBICUA
+ */
+public class LedgerCacheTest {
+
+    private static final String NETWORK = "sandbox";
+    private static final long TTL = 1000L;
+
+    private long now;
+
+    @BeforeEach
+    public void setUp() {
+        now = 1000000L;
+    }
+
+    @Test
+    public void returnsEntriesWithinTheirTimeToLive() {
+
+        LedgerCache cache = cache(false, 10);
+        LedgerCache.Entry entry = entry(1L, 10L);
+        cache.put(NETWORK, "did-1", entry);
+
+        now += TTL - 1;
+        assertSame(entry, cache.get(NETWORK, "did-1"));
+        assertFalse(cache.isStale(entry));
+        assertEquals(1L, stat("hits", cache));
+    }
+
+    @Test
+    public void expiresEntriesAfterTheirTimeToLive() {
+
+        LedgerCache cache = cache(false, 10);
+        cache.put(NETWORK, "did-1", entry(1L, 10L));
+
+        now += TTL;
+        assertNull(cache.get(NETWORK, "did-1"));
+        assertNull(cache.get(NETWORK, "did-2"));
+        assertEquals(2L, stat("misses", cache));
+    }
+
+    @Test
+    public void returnsStaleEntriesUpToTwiceTheTimeToLive() {
+
+        LedgerCache cache = cache(true, 10);
+        LedgerCache.Entry entry = entry(1L, 10L);
+        cache.put(NETWORK, "did-1", entry);
+
+        now += TTL;
+        assertSame(entry, cache.get(NETWORK, "did-1"));
+        assertTrue(cache.isStale(entry));
+
+        now += TTL - 1;
+        assertSame(entry, cache.get(NETWORK, "did-1"));
+        assertEquals(2L, stat("staleHits", cache));
+
+        now += 1;
+        assertNull(cache.get(NETWORK, "did-1"));
+        assertEquals(1L, stat("misses", cache));
+    }
+
+    @Test
+    public void claimsTheRevalidationOnce() {
+
+        LedgerCache.Entry entry = entry(1L, 10L);
+
+        assertTrue(entry.startRevalidation());
+        assertFalse(entry.startRevalidation());
+
+        entry.endRevalidation();
+        assertTrue(entry.startRevalidation());
+    }
+
+    @Test
+    public void renewsUnchangedEntries() {
+
+        LedgerCache cache = cache(true, 10);
+        LedgerCache.Entry entry = entry(1L, 10L);
+        cache.put(NETWORK, "did-1", entry);
+
+        now += TTL + TTL / 2;
+        assertTrue(entry.isSame(response(1L, 10L), response(1L, 10L)));
+        cache.revalidated(NETWORK, "did-1", entry.renewed(), false);
+
+        now += TTL - 1;
+        LedgerCache.Entry renewed = cache.get(NETWORK, "did-1");
+        assertFalse(cache.isStale(renewed));
+        assertEquals(1L, stat("hits", cache));
+        assertEquals(1L, stat("revalidations", cache));
+        assertEquals(0L, stat("changes", cache));
+    }
+
+    @Test
+    public void replacesChangedEntries() {
+
+        LedgerCache cache = cache(true, 10);
+        cache.put(NETWORK, "did-1", entry(1L, 10L));
+
+        now += TTL;
+        LedgerCache.Entry changed = entry(2L, 20L);
+        assertFalse(cache.get(NETWORK, "did-1").isSame(changed.getNymResponse(), changed.getAttrResponse()));
+        cache.revalidated(NETWORK, "did-1", changed, true);
+
+        assertSame(changed, cache.get(NETWORK, "did-1"));
+        assertEquals(1L, stat("changes", cache));
+    }
+
+    @Test
+    public void removesEntriesNotFoundAnymore() {
+
+        LedgerCache cache = cache(true, 10);
+        cache.put(NETWORK, "did-1", entry(1L, 10L));
+
+        cache.revalidated(NETWORK, "did-1", null, true);
+        assertNull(cache.get(NETWORK, "did-1"));
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedEntry() {
+
+        LedgerCache cache = cache(false, 2);
+        LedgerCache.Entry first = entry(1L, 10L);
+        LedgerCache.Entry third = entry(3L, 30L);
+        cache.put(NETWORK, "did-1", first);
+        cache.put(NETWORK, "did-2", entry(2L, 20L));
+
+        cache.get(NETWORK, "did-1");
+        cache.put(NETWORK, "did-3", third);
+
+        assertSame(first, cache.get(NETWORK, "did-1"));
+        assertNull(cache.get(NETWORK, "did-2"));
+        assertSame(third, cache.get(NETWORK, "did-3"));
+        assertEquals(2, cache.stats().get("entries"));
+    }
+
+    @Test
+    public void keysEntriesByNetwork() {
+
+        LedgerCache cache = cache(false, 10);
+        LedgerCache.Entry entry = entry(1L, 10L);
+        cache.put(NETWORK, "did-1", entry);
+
+        assertNull(cache.get("builder", "did-1"));
+        assertSame(entry, cache.get(NETWORK, "did-1"));
+    }
+
+    @Test
+    public void storesNothingWhenDisabled() {
+
+        LedgerCache cache = new LedgerCache(0L, 10, true, Collections.singletonList(NETWORK), () -> now);
+        cache.put(NETWORK, "did-1", entry(1L, 10L));
+
+        assertFalse(cache.isEnabled());
+        assertNull(cache.get(NETWORK, "did-1"));
+        assertEquals(0, cache.stats().get("entries"));
+    }
+
+    /*
+     * Helper methods
+     */
+    private LedgerCache cache(boolean revalidate, int maxEntries) {
+        return new LedgerCache(TTL, maxEntries, revalidate, Collections.singletonList(NETWORK), () -> now);
+    }
+
+    private static LedgerCache.Entry entry(long seqNo, long txnTime) {
+        return new LedgerCache.Entry(response(seqNo, txnTime), new JsonObject(), response(seqNo, txnTime), new JsonObject());
+    }
+
+    private static JsonObject response(long seqNo, long txnTime) {
+
+        JsonObject result = new JsonObject();
+        result.addProperty("seqNo", seqNo);
+        result.addProperty("txnTime", txnTime);
+
+        JsonObject response = new JsonObject();
+        response.add("result", result);
+        return response;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long stat(String name, LedgerCache cache) {
+
+        Map<String, Object> networks = (Map<String, Object>) cache.stats().get("networks");
+        return (Long) ((Map<String, Object>) networks.get(NETWORK)).get(name);
+    }
+}
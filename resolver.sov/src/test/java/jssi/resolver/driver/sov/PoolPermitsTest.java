@@ -0,0 +1,103 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.driver.sov;
+
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Queueing of the resolutions of a busy pool.
+ *
+ * @author UBICUA
+ */
+public class PoolPermitsTest {
+
+    @Test
+    public void grantsFreePermitsAtOnce() {
+
+        PoolPermits permits = new PoolPermits(2);
+
+        assertTrue(permits.acquire().isDone());
+        assertTrue(permits.tryAcquire());
+        assertEquals(0, permits.availablePermits());
+        assertFalse(permits.tryAcquire());
+    }
+
+    @Test
+    public void queuesWaitersInArrivalOrder() {
+
+        PoolPermits permits = new PoolPermits(1);
+        permits.acquire();
+        CompletableFuture<Void> first = permits.acquire();
+        CompletableFuture<Void> second = permits.acquire();
+
+        assertFalse(first.isDone());
+        assertEquals(2, permits.getQueueLength());
+
+        permits.release();
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+
+        permits.release();
+        assertTrue(second.isDone());
+
+        permits.release();
+        assertEquals(1, permits.availablePermits());
+        assertEquals(0, permits.getQueueLength());
+    }
+
+    @Test
+    public void dropsWaitersFailedByTheirDeadline() {
+
+        PoolPermits permits = new PoolPermits(1);
+        permits.acquire();
+        CompletableFuture<Void> expired = permits.acquire();
+        CompletableFuture<Void> cancelled = permits.acquire();
+        CompletableFuture<Void> waiting = permits.acquire();
+
+        expired.completeExceptionally(new IllegalStateException("deadline"));
+        cancelled.cancel(false);
+        assertEquals(1, permits.getQueueLength());
+
+        permits.release();
+        assertTrue(waiting.isDone());
+        assertFalse(waiting.isCompletedExceptionally());
+    }
+
+    @Test
+    public void doesNotLetTryAcquireJumpTheQueue() {
+
+        PoolPermits permits = new PoolPermits(1);
+        permits.acquire();
+        CompletableFuture<Void> waiting = permits.acquire();
+
+        permits.release();
+        assertTrue(waiting.isDone());
+        assertFalse(permits.tryAcquire());
+    }
+
+    @Test
+    public void rejectsNoConcurrency() {
+        assertThrows(IllegalArgumentException.class, () -> new PoolPermits(0));
+    }
+}
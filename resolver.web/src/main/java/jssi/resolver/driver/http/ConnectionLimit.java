@@ -0,0 +1,148 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.driver.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+
+/**
+ * Requests of one HTTP driver in flight at once. Drivers served by the same
+ * host share its route in the connection pool, so the limit of each driver
+ * is enforced here, before a request leases a connection. Like a lease, a
+ * request waits for a free slot at most the connection request timeout and
+ * then fails with a ConnectionPoolTimeoutException. Waiters are served in
+ * arrival order, without holding a thread for asynchronous requests.
+ *
+ * @author UBICUA
+ */
+public class ConnectionLimit {
+
+    private final int max;
+    private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private int available;
+
+    public ConnectionLimit(int max) {
+
+        if (max < 1) {
+            throw new IllegalArgumentException("Max connections must be positive");
+        }
+
+        this.max = max;
+        this.available = max;
+    }
+
+    /**
+     * Future completed once the caller holds a slot, which it must release,
+     * or failed after the timeout.
+     *
+     * @param timeout longest wait (milliseconds), 0 or negative for none
+     */
+    public CompletableFuture<Void> acquire(long timeout) {
+
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        synchronized (this) {
+            if (available > 0) {
+                available--;
+                waiter.complete(null);
+                return waiter;
+            }
+            waiters.add(waiter);
+        }
+
+        waiter.whenComplete((ignored, ex) -> {
+            if (ex != null) {
+                synchronized (this) {
+                    waiters.remove(waiter);
+                }
+            }
+        });
+
+        if (timeout > 0) {
+            CompletableFuture.delayedExecutor(timeout, TimeUnit.MILLISECONDS).execute(()
+                    -> waiter.completeExceptionally(new ConnectionPoolTimeoutException("Timeout waiting for a connection of the driver (max " + max + ")")));
+        }
+        return waiter;
+    }
+
+    /**
+     * Blocks until the caller holds a slot, which it must release.
+     *
+     * @param timeout longest wait (milliseconds), 0 or negative for none
+     */
+    public void await(long timeout) throws IOException {
+
+        CompletableFuture<Void> waiter = acquire(timeout);
+        try {
+            waiter.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            if (!waiter.cancel(false)) {
+                release();
+            }
+            throw new InterruptedIOException("Interrupted waiting for a connection of the driver");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    /**
+     * Gives the slot to the first waiter, or back to the driver.
+     */
+    public void release() {
+
+        while (true) {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                next = waiters.poll();
+                if (next == null) {
+                    available = Math.min(available + 1, max);
+                    return;
+                }
+            }
+
+            // the waiter continues on this thread, outside the lock
+            if (next.complete(null)) {
+                return;
+            }
+        }
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    public synchronized Map<String, Object> stats() {
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("max", max);
+        stats.put("inFlight", max - available);
+        stats.put("waiting", waiters.size());
+        return stats;
+    }
+}
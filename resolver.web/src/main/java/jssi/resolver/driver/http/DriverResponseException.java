@@ -0,0 +1,49 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.driver.http;
+
+import uniresolver.ResolutionException;
+
+/**
+ * Error answer of a remote driver, with its HTTP status.
+ *
+ * @author UBICUA
+ */
+public class DriverResponseException extends ResolutionException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public DriverResponseException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * True for a 4xx answer to the request itself, e.g. a malformed
+     * identifier; a timeout (408) or rate limit (429) is not a client error.
+     */
+    public boolean isClientError() {
+        return statusCode >= 400 && statusCode < 500 && statusCode != 408 && statusCode != 429;
+    }
+}
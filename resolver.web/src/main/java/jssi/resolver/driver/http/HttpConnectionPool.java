@@ -0,0 +1,230 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.driver.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared pools of HTTP connections used by all the HTTP drivers: a blocking
+ * client for Driver.resolve and a non-blocking client for asynchronous
+ * resolution, both with the same limits and timeouts.
+ *
+ * @author UBICUA
+ */
+public class HttpConnectionPool implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HttpConnectionPool.class);
+
+    public static final int DEFAULT_MAX_TOTAL = 200;
+    public static final int DEFAULT_MAX_PER_ROUTE = 20;
+    public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+    public static final int DEFAULT_SOCKET_TIMEOUT = 10000;
+    public static final int DEFAULT_REQUEST_TIMEOUT = 5000;
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000L;
+    public static final long DEFAULT_KEEP_ALIVE = 30000L;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final PoolingNHttpClientConnectionManager asyncConnectionManager;
+    private final CloseableHttpAsyncClient httpAsyncClient;
+    private final ScheduledExecutorService evictor;
+    private final RequestConfig requestConfig;
+
+    public HttpConnectionPool() throws IOException {
+        this(DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_ROUTE, DEFAULT_CONNECT_TIMEOUT, DEFAULT_SOCKET_TIMEOUT, DEFAULT_REQUEST_TIMEOUT, DEFAULT_IDLE_TIMEOUT, DEFAULT_KEEP_ALIVE);
+    }
+
+    public HttpConnectionPool(int maxTotal, int maxPerRoute, int connectTimeout, int socketTimeout, int requestTimeout, long idleTimeout, long keepAlive) throws IOException {
+
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        this.connectionManager.setMaxTotal(maxTotal);
+        this.connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+
+        this.requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(socketTimeout)
+                .setConnectionRequestTimeout(requestTimeout)
+                .build();
+
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return duration > 0 ? Math.min(duration, keepAlive) : keepAlive;
+        };
+
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeout, TimeUnit.MILLISECONDS)
+                .build();
+
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSoTimeout(socketTimeout)
+                .build();
+
+        this.asyncConnectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig));
+        this.asyncConnectionManager.setMaxTotal(maxTotal);
+        this.asyncConnectionManager.setDefaultMaxPerRoute(maxPerRoute);
+
+        this.httpAsyncClient = HttpAsyncClients.custom()
+                .setConnectionManager(asyncConnectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .build();
+        this.httpAsyncClient.start();
+
+        // the non-blocking manager has no built-in evictor
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "http-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.evictor.scheduleWithFixedDelay(() -> {
+            asyncConnectionManager.closeExpiredConnections();
+            asyncConnectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+        }, idleTimeout, idleTimeout, TimeUnit.MILLISECONDS);
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info(String.format("HTTP pool: max %d, per route %d, timeouts %d/%d/%d ms, idle %d ms, keep-alive %d ms",
+                    maxTotal, maxPerRoute, connectTimeout, socketTimeout, requestTimeout, idleTimeout, keepAlive));
+        }
+    }
+
+    /**
+     * Request configuration overriding the pool defaults with the non null
+     * timeouts (milliseconds).
+     */
+    public RequestConfig requestConfig(Integer connectTimeout, Integer socketTimeout, Integer requestTimeout) {
+        return requestConfig(requestConfig, connectTimeout, socketTimeout, requestTimeout);
+    }
+
+    /**
+     * Copy of the request configuration with the non null timeouts
+     * (milliseconds).
+     */
+    public static RequestConfig requestConfig(RequestConfig base, Integer connectTimeout, Integer socketTimeout, Integer requestTimeout) {
+
+        RequestConfig.Builder builder = RequestConfig.copy(base);
+        if (connectTimeout != null) {
+            builder.setConnectTimeout(connectTimeout);
+        }
+        if (socketTimeout != null) {
+            builder.setSocketTimeout(socketTimeout);
+        }
+        if (requestTimeout != null) {
+            builder.setConnectionRequestTimeout(requestTimeout);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Raises the connections to the host of the URI to at least max. Routes
+     * are per host and shared by the drivers it serves, so a route is never
+     * lowered here; each driver enforces its own limit.
+     */
+    public synchronized void ensureMaxPerRoute(URI uri, int max) {
+
+        HttpRoute route = route(uri);
+        if (connectionManager.getMaxPerRoute(route) < max) {
+            connectionManager.setMaxPerRoute(route, max);
+        }
+        if (asyncConnectionManager.getMaxPerRoute(route) < max) {
+            asyncConnectionManager.setMaxPerRoute(route, max);
+        }
+    }
+
+    public Map<String, Object> stats(URI uri) {
+        return stats(connectionManager.getStats(route(uri)), asyncConnectionManager.getStats(route(uri)));
+    }
+
+    public Map<String, Object> stats() {
+        return stats(connectionManager.getTotalStats(), asyncConnectionManager.getTotalStats());
+    }
+
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public CloseableHttpAsyncClient getHttpAsyncClient() {
+        return httpAsyncClient;
+    }
+
+    public RequestConfig getRequestConfig() {
+        return requestConfig;
+    }
+
+    @Override
+    public void close() throws IOException {
+        evictor.shutdownNow();
+        httpClient.close();
+        connectionManager.shutdown();
+        httpAsyncClient.close();
+    }
+
+    /*
+     * Helper methods
+     */
+    private static HttpRoute route(URI uri) {
+
+        boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort() > 0 ? uri.getPort() : (secure ? 443 : 80);
+        return new HttpRoute(new HttpHost(uri.getHost(), port, uri.getScheme()), null, secure);
+    }
+
+    private static Map<String, Object> stats(PoolStats poolStats, PoolStats asyncPoolStats) {
+
+        Map<String, Object> stats = stats(poolStats);
+        stats.put("async", stats(asyncPoolStats));
+        return stats;
+    }
+
+    private static Map<String, Object> stats(PoolStats poolStats) {
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("leased", poolStats.getLeased());
+        stats.put("pending", poolStats.getPending());
+        stats.put("available", poolStats.getAvailable());
+        stats.put("max", poolStats.getMax());
+        return stats;
+    }
+}
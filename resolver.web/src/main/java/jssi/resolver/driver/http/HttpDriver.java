@@ -23,19 +23,29 @@ import java.net.URI;
 import java.net.URLEncoder;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import foundation.identity.did.DIDDocument;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.nio.client.HttpAsyncClient;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import jssi.resolver.local.ResolutionOptions;
+import jssi.resolver.local.ResolutionTiming;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.Serializable;
 
@@ -58,6 +68,10 @@ public class HttpDriver implements Driver, Serializable {
     public static final String DEFAULT_ENCODE_IDENTIFIER = null;
 
     private HttpClient httpClient = DEFAULT_HTTP_CLIENT;
+    private HttpAsyncClient httpAsyncClient = null;
+    private HttpConnectionPool connectionPool = null;
+    private volatile RequestConfig requestConfig = null;
+    private volatile ConnectionLimit connectionLimit = null;
     private URI resolveUri = DEFAULT_RESOLVE_URI;
     private URI propertiesUri = DEFAULT_PROPERTIES_URI;
     private Pattern pattern = DEFAULT_PATTERN;
@@ -69,6 +83,344 @@ public class HttpDriver implements Driver, Serializable {
     
     @Override
     public ResolveResult resolve(String identifier) throws ResolutionException {
+        return resolve(identifier, ResolutionTiming.disabled());
+    }
+
+    /**
+     * Resolves the identifier, recording the network wait (until the body is
+     * read) and the parsing of the body in the timing.
+     */
+    public ResolveResult resolve(String identifier, ResolutionTiming timing) throws ResolutionException {
+        return resolve(identifier, null, timing);
+    }
+
+    /**
+     * Resolves the identifier with the driver options: "accept" is sent as
+     * the Accept header, the other options as query parameters.
+     */
+    public ResolveResult resolve(String identifier, Map<String, String> options, ResolutionTiming timing) throws ResolutionException {
+
+        String uriString = this.resolveUriString(identifier, options);
+        if (uriString == null) {
+            return null;
+        }
+
+        HttpGet httpGet = this.resolveRequest(uriString, options);
+
+        // execute HTTP request
+        ResolveResult resolveResult;
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Request for identifier " + identifier + " to: " + uriString);
+        }
+
+        long start = System.nanoTime();
+        ConnectionLimit limit = this.connectionLimit;
+
+        try {
+            if (limit != null) {
+                limit.await(this.connectionRequestTimeout());
+            }
+            try ( CloseableHttpResponse httpResponse = (CloseableHttpResponse) this.getHttpClient().execute(httpGet)) {
+                resolveResult = this.resolveResult(identifier, uriString, httpResponse, start, timing);
+            } finally {
+                if (limit != null) {
+                    limit.release();
+                }
+            }
+        } catch (IOException ex) {
+            throw new ResolutionException("Cannot retrieve RESOLVE RESULT for " + identifier + " from " + uriString + ": " + ex.getMessage(), ex);
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Retrieved RESOLVE RESULT for " + identifier + " (" + uriString + "): " + resolveResult);
+        }
+
+        // done
+        return resolveResult;
+    }
+
+    /**
+     * Resolves the identifier without blocking the calling thread. Cancelling
+     * the returned future aborts the HTTP request.
+     */
+    public CompletableFuture<ResolveResult> resolveAsync(String identifier) {
+        return resolveAsync(identifier, ResolutionTiming.disabled());
+    }
+
+    public CompletableFuture<ResolveResult> resolveAsync(String identifier, ResolutionTiming timing) {
+        return resolveAsync(identifier, null, timing);
+    }
+
+    public CompletableFuture<ResolveResult> resolveAsync(String identifier, Map<String, String> options, ResolutionTiming timing) {
+
+        if (this.getHttpAsyncClient() == null) {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return this.resolve(identifier, options, timing);
+                } catch (ResolutionException ex) {
+                    throw new CompletionException(ex);
+                }
+            });
+        }
+
+        String uriString;
+        try {
+            uriString = this.resolveUriString(identifier, options);
+        } catch (ResolutionException ex) {
+            CompletableFuture<ResolveResult> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            return failed;
+        }
+
+        if (uriString == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Asynchronous request for identifier " + identifier + " to: " + uriString);
+        }
+
+        CompletableFuture<ResolveResult> resolveResult = new CompletableFuture<>();
+        long start = System.nanoTime();
+        ConnectionLimit limit = this.connectionLimit;
+
+        if (limit == null) {
+            this.executeAsync(identifier, uriString, options, start, timing, resolveResult);
+            return resolveResult;
+        }
+
+        // the request starts once the driver has a free connection
+        CompletableFuture<Void> slot = limit.acquire(this.connectionRequestTimeout());
+        slot.whenComplete((ignored, ex) -> {
+            if (ex != null) {
+                resolveResult.completeExceptionally(new ResolutionException("Cannot retrieve RESOLVE RESULT for " + identifier + " from " + uriString + ": " + ex.getMessage(), ex));
+                return;
+            }
+            if (resolveResult.isDone()) {
+                limit.release();
+                return;
+            }
+            resolveResult.whenComplete((result, error) -> limit.release());
+            this.executeAsync(identifier, uriString, options, start, timing, resolveResult);
+        });
+
+        resolveResult.whenComplete((result, ex) -> {
+            if (resolveResult.isCancelled()) {
+                slot.cancel(false);
+            }
+        });
+
+        return resolveResult;
+    }
+
+    private void executeAsync(String identifier, String uriString, Map<String, String> options, long start, ResolutionTiming timing, CompletableFuture<ResolveResult> resolveResult) {
+
+        Future<HttpResponse> httpFuture = this.getHttpAsyncClient().execute(this.resolveRequest(uriString, options), new FutureCallback<HttpResponse>() {
+
+            @Override
+            public void completed(HttpResponse httpResponse) {
+                try {
+                    resolveResult.complete(HttpDriver.this.resolveResult(identifier, uriString, httpResponse, start, timing));
+                } catch (ResolutionException ex) {
+                    resolveResult.completeExceptionally(ex);
+                } catch (IOException ex) {
+                    resolveResult.completeExceptionally(new ResolutionException("Cannot retrieve RESOLVE RESULT for " + identifier + " from " + uriString + ": " + ex.getMessage(), ex));
+                }
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                resolveResult.completeExceptionally(new ResolutionException("Cannot retrieve RESOLVE RESULT for " + identifier + " from " + uriString + ": " + ex.getMessage(), ex));
+            }
+
+            @Override
+            public void cancelled() {
+                resolveResult.cancel(false);
+            }
+        });
+
+        resolveResult.whenComplete((result, ex) -> {
+            if (resolveResult.isCancelled()) {
+                httpFuture.cancel(true);
+            }
+        });
+    }
+
+    @Override
+    public Map<String, Object> properties() throws ResolutionException {
+
+        // prepare properties
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("http", httpProperties());
+
+        // remote properties
+        try {
+
+            Map<String, Object> remoteProperties = this.remoteProperties();
+            if (remoteProperties != null) {
+                properties.putAll(remoteProperties);
+            }
+        } catch (ResolutionException ex) {
+
+            if (LOG.isWarnEnabled()) {
+                LOG.warn("Cannot retrieve remote properties: " + ex.getMessage(), ex);
+            }
+            properties.put("remotePropertiesException", ex.getMessage());
+        }
+
+        // done
+        return properties;
+    }
+
+    /**
+     * Local configuration and connection pool state, without calling the
+     * driver.
+     */
+    public Map<String, Object> httpProperties() {
+
+        Map<String, Object> httpProperties = new HashMap<>();
+
+        if (this.getResolveUri() != null) {
+            httpProperties.put("resolveUri", this.getResolveUri().toString());
+        }
+        if (this.getPropertiesUri() != null) {
+            httpProperties.put("propertiesUri", this.getPropertiesUri().toString());
+        }
+        if (this.getPattern() != null) {
+            httpProperties.put("pattern", this.getPattern().toString());
+        }
+        if (this.getEncodeIdentifier() != null) {
+            httpProperties.put("encodeIdentifier", this.getEncodeIdentifier());
+        }
+        if (this.getRequestConfig() != null) {
+            httpProperties.put("connectTimeout", this.getRequestConfig().getConnectTimeout());
+            httpProperties.put("socketTimeout", this.getRequestConfig().getSocketTimeout());
+            httpProperties.put("requestTimeout", this.getRequestConfig().getConnectionRequestTimeout());
+        }
+        if (this.getConnectionPool() != null && this.getResolveUri() != null) {
+            httpProperties.put("pool", this.getConnectionPool().stats(this.getResolveUri()));
+        }
+        if (this.connectionLimit != null) {
+            httpProperties.put("connections", this.connectionLimit.stats());
+        }
+
+        return httpProperties;
+    }
+
+    public Map<String, Object> remoteProperties() throws ResolutionException {
+
+        if (this.getPropertiesUri() == null) {
+            return null;
+        }
+
+        // prepare HTTP request
+        String uriString = this.getPropertiesUri().toString();
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Request to: " + uriString);
+        }
+
+        // execute HTTP request
+        try ( CloseableHttpResponse httpResponse = (CloseableHttpResponse) this.getHttpClient().execute(this.propertiesRequest(uriString))) {
+            return this.remoteProperties(uriString, httpResponse);
+        } catch (IOException ex) {
+            throw new ResolutionException("Cannot retrieve DRIVER PROPERTIES from " + uriString + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Asynchronous variant of remoteProperties on the pooled async client.
+     * Cancelling the returned future aborts the HTTP request.
+     */
+    public CompletableFuture<Map<String, Object>> remotePropertiesAsync() {
+
+        if (this.getPropertiesUri() == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (this.getHttpAsyncClient() == null) {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return this.remoteProperties();
+                } catch (ResolutionException ex) {
+                    throw new CompletionException(ex);
+                }
+            });
+        }
+
+        String uriString = this.getPropertiesUri().toString();
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Asynchronous request to: " + uriString);
+        }
+
+        CompletableFuture<Map<String, Object>> properties = new CompletableFuture<>();
+
+        Future<HttpResponse> httpFuture = this.getHttpAsyncClient().execute(this.propertiesRequest(uriString), new FutureCallback<HttpResponse>() {
+
+            @Override
+            public void completed(HttpResponse httpResponse) {
+                try {
+                    properties.complete(HttpDriver.this.remoteProperties(uriString, httpResponse));
+                } catch (ResolutionException ex) {
+                    properties.completeExceptionally(ex);
+                } catch (IOException ex) {
+                    properties.completeExceptionally(new ResolutionException("Cannot retrieve DRIVER PROPERTIES from " + uriString + ": " + ex.getMessage(), ex));
+                }
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                properties.completeExceptionally(new ResolutionException("Cannot retrieve DRIVER PROPERTIES from " + uriString + ": " + ex.getMessage(), ex));
+            }
+
+            @Override
+            public void cancelled() {
+                properties.cancel(false);
+            }
+        });
+
+        properties.whenComplete((result, ex) -> {
+            if (properties.isCancelled()) {
+                httpFuture.cancel(true);
+            }
+        });
+
+        return properties;
+    }
+
+    /*
+     * Helper methods
+     */
+
+    /**
+     * Resolve URI for the identifier, or null if the identifier does not match
+     * the driver pattern.
+     */
+    private String resolveUriString(String identifier, Map<String, String> options) throws ResolutionException {
+
+        String uriString = this.resolveUriString(identifier);
+        if (uriString == null || options == null) {
+            return uriString;
+        }
+
+        StringBuilder query = new StringBuilder(uriString);
+        char separator = uriString.indexOf('?') < 0 ? '?' : '&';
+        try {
+            for (Map.Entry<String, String> option : options.entrySet()) {
+                if (!ResolutionOptions.ACCEPT.equals(option.getKey())) {
+                    query.append(separator).append(URLEncoder.encode(option.getKey(), "UTF-8")).append('=').append(URLEncoder.encode(option.getValue(), "UTF-8"));
+                    separator = '&';
+                }
+            }
+        } catch (UnsupportedEncodingException ex) {
+            throw new ResolutionException(ex.getMessage(), ex);
+        }
+        return query.toString();
+    }
+
+    private String resolveUriString(String identifier) throws ResolutionException {
 
         if (getPattern() == null || getResolveUri() == null) {
             return null;
@@ -140,163 +492,121 @@ public class HttpDriver implements Driver, Serializable {
             uriString += encodedIdentifier;
         }
 
-        HttpGet httpGet = new HttpGet(URI.create(uriString));
+        return uriString;
+    }
 
-        // execute HTTP request
-        ResolveResult resolveResult;
+    private HttpGet propertiesRequest(String uriString) {
 
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("Request for identifier " + identifier + " to: " + uriString);
+        HttpGet httpGet = new HttpGet(URI.create(uriString));
+        httpGet.addHeader("Accept", Driver.PROPERTIES_MIME_TYPE);
+        if (this.getRequestConfig() != null) {
+            httpGet.setConfig(this.getRequestConfig());
         }
+        return httpGet;
+    }
 
-        try ( CloseableHttpResponse httpResponse = (CloseableHttpResponse) this.getHttpClient().execute(httpGet)) {
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> remoteProperties(String uriString, HttpResponse httpResponse) throws IOException, ResolutionException {
 
-            int statusCode = httpResponse.getStatusLine().getStatusCode();
-            String statusMessage = httpResponse.getStatusLine().getReasonPhrase();
+        int statusCode = httpResponse.getStatusLine().getStatusCode();
+        String statusMessage = httpResponse.getStatusLine().getReasonPhrase();
 
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Response status from " + uriString + ": " + statusCode + " " + statusMessage);
-            }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Response status from " + uriString + ": " + statusCode + " " + statusMessage);
+        }
 
-            if (statusCode == 404) {
-                return null;
-            }
+        if (statusCode == 404) {
+            EntityUtils.consume(httpResponse.getEntity());
+            return null;
+        }
 
-            HttpEntity httpEntity = httpResponse.getEntity();
-            String httpBody = EntityUtils.toString(httpEntity);
-            EntityUtils.consume(httpEntity);
+        HttpEntity httpEntity = httpResponse.getEntity();
+        String httpBody = EntityUtils.toString(httpEntity);
+        EntityUtils.consume(httpEntity);
 
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Response body from " + uriString + ": " + httpBody);
-            }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Response body from " + uriString + ": " + httpBody);
+        }
 
-            if (httpResponse.getStatusLine().getStatusCode() > 200) {
-                if (LOG.isWarnEnabled()) {
-                    LOG.warn("Cannot retrieve RESOLVE RESULT for " + identifier + " from " + uriString + ": " + httpBody);
-                }
-                throw new ResolutionException(httpBody);
-            }
+        if (statusCode > 200) {
 
-            try {
-                resolveResult = ResolveResult.fromJson(httpBody);
-            } catch (IOException ex) {
-                if (LOG.isWarnEnabled()) {
-                    LOG.warn("No RESOLVE RESULT. Maybe DID DOCUMENT: " + httpBody + " (" + ex.getMessage());
-                }
-                resolveResult = ResolveResult.build(DIDDocument.fromJson(httpBody));
+            if (LOG.isWarnEnabled()) {
+                LOG.warn("Cannot retrieve DRIVER PROPERTIES from " + uriString + ": " + httpBody);
             }
-        } catch (IOException ex) {
-            throw new ResolutionException("Cannot retrieve RESOLVE RESULT for " + identifier + " from " + uriString + ": " + ex.getMessage(), ex);
+            throw new DriverResponseException(httpBody, statusCode);
         }
 
+        Map<String, Object> properties = (Map<String, Object>) objectMapper.readValue(httpBody, Map.class);
+
         if (LOG.isDebugEnabled()) {
-            LOG.debug("Retrieved RESOLVE RESULT for " + identifier + " (" + uriString + "): " + resolveResult);
+            LOG.debug("Retrieved DRIVER PROPERTIES (" + uriString + "): " + properties);
         }
 
-        // done
-        return resolveResult;
+        return properties;
     }
 
-    @Override
-    public Map<String, Object> properties() throws ResolutionException {
+    private long connectionRequestTimeout() {
+        return this.getRequestConfig() != null ? this.getRequestConfig().getConnectionRequestTimeout() : -1;
+    }
 
-        // prepare properties
-        Map<String, Object> httpProperties = new HashMap<>();
+    private HttpGet resolveRequest(String uriString, Map<String, String> options) {
 
-        if (this.getResolveUri() != null) {
-            httpProperties.put("resolveUri", this.getResolveUri().toString());
-        }
-        if (this.getPropertiesUri() != null) {
-            httpProperties.put("propertiesUri", this.getPropertiesUri().toString());
-        }
-        if (this.getPattern() != null) {
-            httpProperties.put("pattern", this.getPattern().toString());
+        HttpGet httpGet = new HttpGet(URI.create(uriString));
+        if (options != null && options.containsKey(ResolutionOptions.ACCEPT)) {
+            httpGet.addHeader("Accept", options.get(ResolutionOptions.ACCEPT));
         }
-        if (this.getEncodeIdentifier() != null) {
-            httpProperties.put("encodeIdentifier", this.getEncodeIdentifier());
+        if (this.getRequestConfig() != null) {
+            httpGet.setConfig(this.getRequestConfig());
         }
+        return httpGet;
+    }
 
-        Map<String, Object> properties = new HashMap<>();
-        properties.put("http", httpProperties);
+    private ResolveResult resolveResult(String identifier, String uriString, HttpResponse httpResponse, long start, ResolutionTiming timing) throws IOException, ResolutionException {
 
-        // remote properties
-        try {
+        String host = URI.create(uriString).getHost();
+        int statusCode = httpResponse.getStatusLine().getStatusCode();
+        String statusMessage = httpResponse.getStatusLine().getReasonPhrase();
 
-            Map<String, Object> remoteProperties = this.remoteProperties();
-            if (remoteProperties != null) {
-                properties.putAll(remoteProperties);
-            }
-        } catch (ResolutionException ex) {
-
-            if (LOG.isWarnEnabled()) {
-                LOG.warn("Cannot retrieve remote properties: " + ex.getMessage(), ex);
-            }
-            properties.put("remotePropertiesException", ex.getMessage());
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Response status from " + uriString + ": " + statusCode + " " + statusMessage);
         }
 
-        // done
-        return properties;
-    }
-
-    public Map<String, Object> remoteProperties() throws ResolutionException {
-
-        if (this.getPropertiesUri() == null) {
+        if (statusCode == 404) {
+            timing.record("network", host, start);
             return null;
         }
 
-        // prepare HTTP request
-        String uriString = this.getPropertiesUri().toString();
-
-        HttpGet httpGet = new HttpGet(URI.create(uriString));
-        httpGet.addHeader("Accept", Driver.PROPERTIES_MIME_TYPE);
-
-        // execute HTTP request
-        Map<String, Object> properties;
+        HttpEntity httpEntity = httpResponse.getEntity();
+        String httpBody = EntityUtils.toString(httpEntity);
+        EntityUtils.consume(httpEntity);
+        timing.record("network", host, start);
 
         if (LOG.isDebugEnabled()) {
-            LOG.debug("Request to: " + uriString);
+            LOG.debug("Response body from " + uriString + ": " + httpBody);
         }
 
-        try ( CloseableHttpResponse httpResponse = (CloseableHttpResponse) this.getHttpClient().execute(httpGet)) {
-
-            int statusCode = httpResponse.getStatusLine().getStatusCode();
-            String statusMessage = httpResponse.getStatusLine().getReasonPhrase();
-
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Response status from " + uriString + ": " + statusCode + " " + statusMessage);
-            }
-
-            if (statusCode == 404) {
-                return null;
-            }
-
-            HttpEntity httpEntity = httpResponse.getEntity();
-            String httpBody = EntityUtils.toString(httpEntity);
-            EntityUtils.consume(httpEntity);
-
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Response body from " + uriString + ": " + httpBody);
+        if (httpResponse.getStatusLine().getStatusCode() > 200) {
+            if (LOG.isWarnEnabled()) {
+                LOG.warn("Cannot retrieve RESOLVE RESULT for " + identifier + " from " + uriString + ": " + httpBody);
             }
+            throw new DriverResponseException(httpBody, statusCode);
+        }
 
-            if (httpResponse.getStatusLine().getStatusCode() > 200) {
-
-                if (LOG.isWarnEnabled()) {
-                    LOG.warn("Cannot retrieve DRIVER PROPERTIES from " + uriString + ": " + httpBody);
-                }
-                throw new ResolutionException(httpBody);
-            }
+        ResolveResult resolveResult;
+        long parseStart = System.nanoTime();
 
-            properties = (Map<String, Object>) objectMapper.readValue(httpBody, Map.class);
+        try {
+            resolveResult = ResolveResult.fromJson(httpBody);
         } catch (IOException ex) {
-            throw new ResolutionException("Cannot retrieve DRIVER PROPERTIES from " + uriString + ": " + ex.getMessage(), ex);
-        }
-
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("Retrieved DRIVER PROPERTIES (" + uriString + "): " + properties);
+            if (LOG.isWarnEnabled()) {
+                LOG.warn("No RESOLVE RESULT. Maybe DID DOCUMENT: " + httpBody + " (" + ex.getMessage());
+            }
+            resolveResult = ResolveResult.build(DIDDocument.fromJson(httpBody));
+        } finally {
+            timing.record("parse", host, parseStart);
         }
 
-        // done
-        return properties;
+        return resolveResult;
     }
 
     /*
@@ -310,6 +620,49 @@ public class HttpDriver implements Driver, Serializable {
         this.httpClient = httpClient;
     }
 
+    public HttpConnectionPool getConnectionPool() {
+        return this.connectionPool;
+    }
+
+    /**
+     * Uses the pooled HTTP client and its default request configuration.
+     */
+    public void setConnectionPool(HttpConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+        this.httpClient = connectionPool.getHttpClient();
+        this.httpAsyncClient = connectionPool.getHttpAsyncClient();
+    }
+
+    public HttpAsyncClient getHttpAsyncClient() {
+        return this.httpAsyncClient;
+    }
+
+    public void setHttpAsyncClient(HttpAsyncClient httpAsyncClient) {
+        this.httpAsyncClient = httpAsyncClient;
+    }
+
+    public Integer getMaxConnections() {
+        ConnectionLimit limit = this.connectionLimit;
+        return limit != null ? limit.getMax() : null;
+    }
+
+    /**
+     * Limits the requests of this driver in flight at once, null for no
+     * limit. Requests already holding a connection finish under the old
+     * limit.
+     */
+    public void setMaxConnections(Integer maxConnections) {
+        this.connectionLimit = maxConnections != null ? new ConnectionLimit(maxConnections) : null;
+    }
+
+    public RequestConfig getRequestConfig() {
+        return this.requestConfig;
+    }
+
+    public void setRequestConfig(RequestConfig requestConfig) {
+        this.requestConfig = requestConfig;
+    }
+
     public URI getResolveUri() {
         return this.resolveUri;
     }
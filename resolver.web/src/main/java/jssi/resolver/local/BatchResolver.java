@@ -0,0 +1,170 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uniresolver.driver.Driver;
+import uniresolver.result.ResolveResult;
+
+/**
+ * Resolves a batch of identifiers through the asynchronous path of
+ * LocalUniResolver, so the cache and the coalescing of concurrent resolutions
+ * are shared with single requests. Duplicates are resolved once. At most
+ * "parallelism" identifiers are in flight, and the identifiers are taken in
+ * turns from the groups sharing the same candidate drivers, so a slow driver
+ * cannot hold every slot of the batch.
+ *
+ * @author UBICUA
+ */
+public class BatchResolver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchResolver.class);
+
+    public static final int DEFAULT_PARALLELISM = 16;
+    public static final int DEFAULT_MAX_IDENTIFIERS = 1000;
+    public static final long DEFAULT_TIMEOUT = 60000L;
+
+    private final LocalUniResolver resolver;
+    private final int parallelism;
+
+    public BatchResolver(LocalUniResolver resolver, int parallelism) {
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Batch parallelism must be positive: " + parallelism);
+        }
+
+        this.resolver = resolver;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Starts the resolution of the identifiers. The returned map keeps the
+     * order of the first occurrence of each identifier; its futures complete
+     * as the identifiers are resolved.
+     */
+    public Map<String, CompletableFuture<ResolveResult>> resolve(Collection<String> identifiers, Map<String, String> options) {
+
+        Map<String, CompletableFuture<ResolveResult>> results = new LinkedHashMap<>();
+        for (String identifier : identifiers) {
+            if (identifier == null) {
+                throw new NullPointerException();
+            }
+            results.putIfAbsent(identifier, new CompletableFuture<>());
+        }
+
+        Queue<String> queue = new ConcurrentLinkedQueue<>(interleave(results.keySet()));
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Resolving batch of " + results.size() + " identifiers with parallelism " + parallelism);
+        }
+
+        for (int i = 0; i < Math.min(parallelism, results.size()); i++) {
+            next(queue, results, options);
+        }
+
+        return results;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /*
+     * Helper methods
+     */
+    private void next(Queue<String> queue, Map<String, CompletableFuture<ResolveResult>> results, Map<String, String> options) {
+
+        // loop while results are already available (cache hits) to keep the stack flat
+        for (String identifier = queue.poll(); identifier != null; identifier = queue.poll()) {
+
+            CompletableFuture<ResolveResult> result = results.get(identifier);
+            CompletableFuture<ResolveResult> resolveResult;
+
+            // failed by the batch deadline before its turn
+            if (result.isDone()) {
+                continue;
+            }
+
+            try {
+                resolveResult = resolver.resolveAsync(identifier, options);
+            } catch (RuntimeException ex) {
+                resolveResult = new CompletableFuture<>();
+                resolveResult.completeExceptionally(ex);
+            }
+
+            if (!resolveResult.isDone()) {
+                resolveResult.whenComplete((value, ex) -> {
+                    complete(result, value, ex);
+                    next(queue, results, options);
+                });
+                return;
+            }
+
+            resolveResult.whenComplete((value, ex) -> complete(result, value, ex));
+        }
+    }
+
+    private static void complete(CompletableFuture<ResolveResult> result, ResolveResult value, Throwable ex) {
+
+        if (ex != null) {
+            result.completeExceptionally(ex);
+        } else {
+            result.complete(value);
+        }
+    }
+
+    /**
+     * Orders the identifiers taking one of each group of candidate drivers in
+     * turn.
+     */
+    private List<String> interleave(Collection<String> identifiers) {
+
+        Map<Map<String, Driver>, List<String>> groups = new LinkedHashMap<>();
+        DriverIndex index = resolver.getDrivers().getIndex();
+
+        for (String identifier : identifiers) {
+            groups.computeIfAbsent(index.candidates(identifier), candidates -> new ArrayList<>()).add(identifier);
+        }
+
+        List<Iterator<String>> iterators = new ArrayList<>();
+        for (List<String> group : groups.values()) {
+            iterators.add(group.iterator());
+        }
+
+        List<String> interleaved = new ArrayList<>(identifiers.size());
+        while (interleaved.size() < identifiers.size()) {
+            for (Iterator<String> iterator : iterators) {
+                if (iterator.hasNext()) {
+                    interleaved.add(iterator.next());
+                }
+            }
+        }
+
+        return interleaved;
+    }
+}
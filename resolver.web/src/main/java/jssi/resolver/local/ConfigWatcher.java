@@ -0,0 +1,119 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches a configuration file and runs the callback on its own thread when
+ * the file is written. The events following a change within the debounce
+ * delay are taken as part of the same change, since editors usually write a
+ * file in several steps.
+ *
+ * @author UBICUA
+ */
+public class ConfigWatcher implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConfigWatcher.class);
+
+    public static final long DEFAULT_DEBOUNCE = 500L;
+
+    private final Path file;
+    private final long debounce;
+    private final Runnable onChange;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    public ConfigWatcher(Path file, long debounce, Runnable onChange) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.debounce = debounce;
+        this.onChange = onChange;
+        this.watchService = this.file.getFileSystem().newWatchService();
+        this.file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this::watch, "config-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+
+        thread.start();
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Watching " + file + " for changes");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        thread.interrupt();
+    }
+
+    /*
+     * Helper methods
+     */
+    private void watch() {
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+
+                boolean changed = false;
+                for (WatchKey key = watchService.take(); key != null; key = watchService.poll(debounce, TimeUnit.MILLISECONDS)) {
+                    changed |= changed(key);
+                }
+
+                if (changed) {
+                    if (LOG.isInfoEnabled()) {
+                        LOG.info("Configuration " + file + " changed");
+                    }
+                    try {
+                        onChange.run();
+                    } catch (RuntimeException ex) {
+                        LOG.error(String.format("Cannot apply configuration %s: %s", file, ex.getMessage()), ex);
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException ex) {
+            // closed
+        }
+    }
+
+    private boolean changed(WatchKey key) {
+
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import jssi.resolver.driver.http.HttpDriver;
+import uniresolver.driver.Driver;
+
+/**
+ * Dispatch index of the configured drivers. Drivers whose pattern only matches
+ * identifiers of known DID methods are keyed by method; the remaining drivers
+ * are candidates for every identifier. Candidates keep the configuration order.
+ *
+ * @author UBICUA
+ */
+public class DriverIndex {
+
+    private static final Pattern METHOD_PREFIX = Pattern.compile("did:([a-z0-9]+):");
+
+    private final Map<String, Map<String, Driver>> methods;
+    private final Map<String, Driver> fallback;
+
+    public DriverIndex(Map<String, Driver> drivers) {
+
+        Map<String, Set<String>> keyed = new LinkedHashMap<>();
+        Set<String> allMethods = new LinkedHashSet<>();
+
+        for (Map.Entry<String, Driver> driver : drivers.entrySet()) {
+            Set<String> driverMethods = driver.getValue() instanceof HttpDriver ? methods(((HttpDriver) driver.getValue()).getPattern()) : null;
+            keyed.put(driver.getKey(), driverMethods);
+            if (driverMethods != null) {
+                allMethods.addAll(driverMethods);
+            }
+        }
+
+        Map<String, Driver> fallbackDrivers = new LinkedHashMap<>();
+        for (Map.Entry<String, Driver> driver : drivers.entrySet()) {
+            if (keyed.get(driver.getKey()) == null) {
+                fallbackDrivers.put(driver.getKey(), driver.getValue());
+            }
+        }
+
+        Map<String, Map<String, Driver>> methodDrivers = new HashMap<>();
+        for (String method : allMethods) {
+            Map<String, Driver> candidates = new LinkedHashMap<>();
+            for (Map.Entry<String, Driver> driver : drivers.entrySet()) {
+                Set<String> driverMethods = keyed.get(driver.getKey());
+                if (driverMethods == null || driverMethods.contains(method)) {
+                    candidates.put(driver.getKey(), driver.getValue());
+                }
+            }
+            methodDrivers.put(method, Collections.unmodifiableMap(candidates));
+        }
+
+        this.methods = Collections.unmodifiableMap(methodDrivers);
+        this.fallback = Collections.unmodifiableMap(fallbackDrivers);
+    }
+
+    /**
+     * Ordered candidate drivers for the identifier.
+     */
+    public Map<String, Driver> candidates(String identifier) {
+        return forMethod(method(identifier));
+    }
+
+    /**
+     * Ordered candidate drivers for identifiers of the DID method.
+     */
+    public Map<String, Driver> forMethod(String method) {
+
+        Map<String, Driver> candidates = method == null ? null : methods.get(method);
+        return candidates != null ? candidates : fallback;
+    }
+
+    /**
+     * Dispatch table: candidate driver ids per DID method, and for "*" the
+     * drivers tried for any identifier.
+     */
+    public Map<String, List<String>> table() {
+
+        Map<String, List<String>> table = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, Driver>> method : methods.entrySet()) {
+            table.put(method.getKey(), new ArrayList<>(method.getValue().keySet()));
+        }
+        table.put("*", new ArrayList<>(fallback.keySet()));
+        return table;
+    }
+
+    /**
+     * DID method of the identifier if some driver is keyed by it, or null.
+     */
+    public String indexedMethod(String identifier) {
+
+        String method = method(identifier);
+        return method != null && methods.containsKey(method) ? method : null;
+    }
+
+    public static String method(String identifier) {
+
+        if (identifier == null || !identifier.startsWith("did:")) {
+            return null;
+        }
+
+        int end = identifier.indexOf(':', 4);
+        return end > 4 ? identifier.substring(4, end) : null;
+    }
+
+    /*
+     * Helper methods
+     */
+
+    /**
+     * DID methods matched by the pattern, or null if the pattern may match
+     * identifiers that do not start with a literal "did:method:" prefix.
+     */
+    static Set<String> methods(Pattern pattern) {
+
+        if (pattern == null || pattern.flags() != 0) {
+            return null;
+        }
+
+        Set<String> methods = new LinkedHashSet<>();
+
+        for (String alternative : alternatives(pattern.pattern())) {
+            String method = prefixMethod(alternative);
+            if (method == null) {
+                return null;
+            }
+            methods.add(method);
+        }
+
+        return methods;
+    }
+
+    private static String prefixMethod(String alternative) {
+
+        int i = 0;
+        if (alternative.startsWith("^")) {
+            i++;
+        }
+
+        // groups opened before the literal prefix
+        int groups = 0;
+        while (alternative.startsWith("(", i)) {
+            if (alternative.startsWith("(?:", i)) {
+                i += 3;
+            } else if (alternative.startsWith("(?", i)) {
+                return null;
+            } else {
+                i++;
+            }
+            groups++;
+        }
+
+        Matcher matcher = METHOD_PREFIX.matcher(alternative);
+        if (!matcher.find(i) || matcher.start() != i || optional(alternative, matcher.end())) {
+            return null;
+        }
+
+        // an alternation inside the groups enclosing the prefix, or a quantifier
+        // making one of them optional, would bypass it
+        int depth = groups;
+        int open = groups;
+        boolean inClass = false;
+
+        for (int j = matcher.end(); j < alternative.length(); j++) {
+            char c = alternative.charAt(j);
+            if (c == '\\') {
+                j++;
+            } else if (inClass) {
+                inClass = c != ']';
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+                if (depth < open && optional(alternative, j + 1)) {
+                    return null;
+                }
+                open = Math.min(open, depth);
+            } else if (c == '|' && depth <= open) {
+                return null;
+            }
+        }
+
+        return matcher.group(1);
+    }
+
+    /**
+     * True if a quantifier allowing zero occurrences starts at the index.
+     */
+    private static boolean optional(String regex, int i) {
+        return regex.startsWith("?", i) || regex.startsWith("*", i) || regex.startsWith("{0,", i) || regex.startsWith("{0}", i);
+    }
+
+    private static List<String> alternatives(String regex) {
+
+        List<String> alternatives = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        boolean inClass = false;
+
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (inClass) {
+                inClass = c != ']';
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                alternatives.add(regex.substring(start, i));
+                start = i + 1;
+            }
+        }
+        alternatives.add(regex.substring(start));
+
+        return alternatives;
+    }
+}
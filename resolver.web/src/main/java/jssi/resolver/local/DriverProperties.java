@@ -0,0 +1,182 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import jssi.resolver.driver.http.HttpDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uniresolver.ResolutionException;
+import uniresolver.driver.Driver;
+
+/**
+ * Properties of the drivers, fetched with a timeout per driver and cached
+ * for a time to live since they rarely change. For an HTTP driver only the
+ * remote properties are cached, its pool state is always current. A failed
+ * fetch is not cached: the properties are returned with the error instead.
+ *
+ * @author UBICUA
+ */
+public class DriverProperties {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DriverProperties.class);
+
+    public static final long DEFAULT_TTL = 3600000L;
+    public static final long DEFAULT_TIMEOUT = 5000L;
+
+    private final long ttl;
+    private final long timeout;
+    private final Map<String, Long> driverTimeouts;
+    private final Map<String, Cached> cached = new ConcurrentHashMap<>();
+
+    public DriverProperties() {
+        this(DEFAULT_TTL, DEFAULT_TIMEOUT, Collections.emptyMap());
+    }
+
+    /**
+     * @param ttl time to live of fetched properties (milliseconds)
+     * @param timeout time after which a fetch fails (milliseconds)
+     * @param driverTimeouts timeouts of the drivers not using the default
+     */
+    public DriverProperties(long ttl, long timeout, Map<String, Long> driverTimeouts) {
+        this.ttl = ttl;
+        this.timeout = timeout;
+        this.driverTimeouts = Collections.unmodifiableMap(new HashMap<>(driverTimeouts));
+    }
+
+    /**
+     * Properties of the driver. The future never completes exceptionally:
+     * if the properties cannot be fetched they hold the error under
+     * "remotePropertiesException" for an HTTP driver, "propertiesException"
+     * for another driver.
+     *
+     * @param executor runs the properties() call of drivers other than HTTP
+     */
+    public CompletableFuture<Map<String, Object>> properties(String driverId, Driver driver, Executor executor) {
+
+        return cached(driverId, driver, executor).handle((fetched, ex) -> {
+
+            Map<String, Object> properties = new HashMap<>();
+
+            if (driver instanceof HttpDriver) {
+                properties.put("http", ((HttpDriver) driver).httpProperties());
+            }
+
+            if (ex != null) {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                if (LOG.isWarnEnabled()) {
+                    LOG.warn(String.format("Cannot retrieve properties of driver %s: %s", driverId, cause.getMessage()));
+                }
+                properties.put(driver instanceof HttpDriver ? "remotePropertiesException" : "propertiesException", cause.getMessage());
+            } else if (fetched != null) {
+                properties.putAll(fetched);
+            }
+
+            return properties;
+        });
+    }
+
+    public void invalidate(String driverId) {
+        cached.remove(driverId);
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public long getTimeout(String driverId) {
+        return driverTimeouts.getOrDefault(driverId, timeout);
+    }
+
+    /*
+     * Helper methods
+     */
+    private CompletableFuture<Map<String, Object>> cached(String driverId, Driver driver, Executor executor) {
+
+        long now = System.currentTimeMillis();
+        Cached current = cached.get(driverId);
+        if (current != null && current.expires > now) {
+            return current.properties;
+        }
+
+        // concurrent misses may fetch twice, the last fetch is kept
+        Cached fetched = new Cached(fetch(driverId, driver, executor), now + ttl);
+        cached.put(driverId, fetched);
+        fetched.properties.whenComplete((properties, ex) -> {
+            if (ex != null) {
+                cached.remove(driverId, fetched);
+            }
+        });
+        return fetched.properties;
+    }
+
+    private CompletableFuture<Map<String, Object>> fetch(String driverId, Driver driver, Executor executor) {
+
+        CompletableFuture<Map<String, Object>> fetched;
+
+        if (driver instanceof HttpDriver) {
+            fetched = ((HttpDriver) driver).remotePropertiesAsync();
+        } else {
+            fetched = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return driver.properties();
+                } catch (ResolutionException ex) {
+                    throw new CompletionException(ex);
+                }
+            }, executor);
+        }
+
+        long driverTimeout = getTimeout(driverId);
+        CompletableFuture<Map<String, Object>> properties = new CompletableFuture<>();
+
+        fetched.whenComplete((result, ex) -> {
+            if (ex == null) {
+                properties.complete(result);
+            } else if (ex instanceof CancellationException) {
+                properties.completeExceptionally(new TimeoutException("Timeout after " + driverTimeout + " ms"));
+            } else {
+                properties.completeExceptionally(ex);
+            }
+        });
+
+        // cancelling aborts the HTTP request
+        CompletableFuture.delayedExecutor(driverTimeout, TimeUnit.MILLISECONDS).execute(() -> fetched.cancel(true));
+
+        return properties;
+    }
+
+    private static class Cached {
+
+        private final CompletableFuture<Map<String, Object>> properties;
+        private final long expires;
+
+        private Cached(CompletableFuture<Map<String, Object>> properties, long expires) {
+            this.properties = properties;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uniresolver.driver.Driver;
+import uniresolver.result.ResolveResult;
+
+/**
+ * Races the candidate drivers of an identifier: the first driver is called at
+ * once and, while no result is available, the next one is started after the
+ * hedge delay or as soon as a previous attempt fails. The first non null
+ * result wins and the remaining attempts are cancelled.
+ *
+ * @author UBICUA
+ */
+public class DriverRace implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DriverRace.class);
+
+    public static final long DEFAULT_HEDGE_DELAY = 200L;
+
+    private final long hedgeDelay;
+    private final ScheduledExecutorService scheduler;
+
+    public DriverRace(long hedgeDelay) {
+        this(hedgeDelay, Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "driver-race");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * @param hedgeDelay time before starting the next driver (milliseconds)
+     * @param scheduler scheduler of the hedged attempts, shut down on close
+     */
+    DriverRace(long hedgeDelay, ScheduledExecutorService scheduler) {
+        this.hedgeDelay = hedgeDelay;
+        this.scheduler = scheduler;
+    }
+
+    public CompletableFuture<Winner> race(String identifier, Map<String, Driver> candidates, BiFunction<Map.Entry<String, Driver>, String, CompletableFuture<ResolveResult>> resolver) {
+        return new Race(identifier, new ArrayList<>(candidates.entrySet()), resolver).start();
+    }
+
+    public long getHedgeDelay() {
+        return hedgeDelay;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    public static class Winner {
+
+        private final String driverId;
+        private final ResolveResult resolveResult;
+        private final int attempts;
+
+        private Winner(String driverId, ResolveResult resolveResult, int attempts) {
+            this.driverId = driverId;
+            this.resolveResult = resolveResult;
+            this.attempts = attempts;
+        }
+
+        public String getDriverId() {
+            return driverId;
+        }
+
+        public ResolveResult getResolveResult() {
+            return resolveResult;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+    }
+
+    private class Race {
+
+        private final String identifier;
+        private final List<Map.Entry<String, Driver>> drivers;
+        private final BiFunction<Map.Entry<String, Driver>, String, CompletableFuture<ResolveResult>> resolver;
+        private final CompletableFuture<Winner> winner = new CompletableFuture<>();
+        private final List<CompletableFuture<ResolveResult>> attempts = new CopyOnWriteArrayList<>();
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger finished = new AtomicInteger();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        private Race(String identifier, List<Map.Entry<String, Driver>> drivers, BiFunction<Map.Entry<String, Driver>, String, CompletableFuture<ResolveResult>> resolver) {
+            this.identifier = identifier;
+            this.drivers = drivers;
+            this.resolver = resolver;
+        }
+
+        private CompletableFuture<Winner> start() {
+
+            if (drivers.isEmpty()) {
+                winner.complete(null);
+                return winner;
+            }
+
+            winner.whenComplete((result, ex) -> {
+                for (CompletableFuture<ResolveResult> attempt : attempts) {
+                    attempt.cancel(true);
+                }
+            });
+
+            launchNext();
+            return winner;
+        }
+
+        private void launchNext() {
+
+            int i = next.getAndIncrement();
+            if (i >= drivers.size() || winner.isDone()) {
+                return;
+            }
+
+            Map.Entry<String, Driver> driver = drivers.get(i);
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Racing " + identifier + " with driver " + driver.getKey() + " (attempt " + (i + 1) + ")");
+            }
+
+            CompletableFuture<ResolveResult> attempt;
+            try {
+                attempt = resolver.apply(driver, identifier);
+            } catch (RuntimeException ex) {
+                attempt = new CompletableFuture<>();
+                attempt.completeExceptionally(ex);
+            }
+            attempts.add(attempt);
+            if (winner.isDone()) {
+                attempt.cancel(true);
+            }
+
+            attempt.whenComplete((resolveResult, ex) -> {
+                if (resolveResult != null) {
+                    winner.complete(new Winner(driver.getKey(), resolveResult, Math.min(next.get(), drivers.size())));
+                    return;
+                }
+
+                if (ex != null) {
+                    failure.set(ex);
+                }
+
+                if (finished.incrementAndGet() == drivers.size()) {
+                    Throwable cause = failure.get();
+                    if (cause != null) {
+                        winner.completeExceptionally(cause);
+                    } else {
+                        winner.complete(null);
+                    }
+                } else {
+                    launchNext();
+                }
+            });
+
+            if (i + 1 < drivers.size() && !winner.isDone()) {
+                scheduler.schedule(this::launchNext, hedgeDelay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+}
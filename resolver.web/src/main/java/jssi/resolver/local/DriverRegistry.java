@@ -0,0 +1,254 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import uniresolver.driver.Driver;
+
+/**
+ * Immutable, ordered set of drivers. Drivers are tried by descending priority
+ * and, for the same priority, in registration order; disabled drivers stay
+ * registered but are left out of the dispatch. Every change returns a new
+ * registry, so a registry can be read from any thread without locking.
+ *
+ * @author UBICUA
+ */
+public final class DriverRegistry {
+
+    public static final int DEFAULT_PRIORITY = 0;
+
+    static final DriverRegistry EMPTY = new DriverRegistry(Collections.emptyList());
+
+    private final List<Registration> registrations;
+    private final Map<String, Registration> byId;
+    private final Map<String, Driver> drivers;
+    private final DriverIndex index;
+
+    public DriverRegistry(Collection<Registration> registrations) {
+
+        Map<String, Registration> unique = new LinkedHashMap<>();
+        for (Registration registration : registrations) {
+            unique.put(registration.getId(), registration);
+        }
+
+        // stable sort: registration order within a priority
+        List<Registration> sorted = new ArrayList<>(unique.values());
+        sorted.sort(Comparator.comparingInt(Registration::getPriority).reversed());
+
+        Map<String, Registration> sortedById = new LinkedHashMap<>();
+        Map<String, Driver> sortedDrivers = new LinkedHashMap<>();
+        for (Registration registration : sorted) {
+            sortedById.put(registration.getId(), registration);
+            if (registration.isEnabled()) {
+                sortedDrivers.put(registration.getId(), registration.getDriver());
+            }
+        }
+
+        this.registrations = Collections.unmodifiableList(sorted);
+        this.byId = Collections.unmodifiableMap(sortedById);
+        this.drivers = Collections.unmodifiableMap(sortedDrivers);
+        this.index = new DriverIndex(this.drivers);
+    }
+
+    /**
+     * Registry with the driver added, or replaced if the id is registered.
+     * A replaced driver keeps its place among drivers of the same priority.
+     */
+    public DriverRegistry with(String id, Driver driver, int priority) {
+        return with(new Registration(id, driver, priority));
+    }
+
+    /**
+     * Registry with the registration added, or replacing the one with the
+     * same id.
+     */
+    public DriverRegistry with(Registration added) {
+
+        List<Registration> changed = new ArrayList<>(byId.size() + 1);
+        boolean replaced = false;
+        for (Registration registration : registrations) {
+            if (registration.getId().equals(added.getId())) {
+                changed.add(added);
+                replaced = true;
+            } else {
+                changed.add(registration);
+            }
+        }
+        if (!replaced) {
+            changed.add(added);
+        }
+        return new DriverRegistry(changed);
+    }
+
+    /**
+     * Registry without the driver. Returns this registry if the id is not
+     * registered.
+     */
+    public DriverRegistry without(String id) {
+
+        if (!byId.containsKey(id)) {
+            return this;
+        }
+
+        List<Registration> changed = new ArrayList<>(registrations);
+        changed.removeIf(registration -> registration.getId().equals(id));
+        return new DriverRegistry(changed);
+    }
+
+    /**
+     * Registry with a new priority for the driver.
+     */
+    public DriverRegistry withPriority(String id, int priority) {
+
+        Registration registration = registration(id);
+        return with(new Registration(id, registration.getDriver(), priority, registration.isEnabled()));
+    }
+
+    /**
+     * Registry with the driver enabled or disabled. Returns this registry if
+     * the driver is already in that state.
+     */
+    public DriverRegistry withEnabled(String id, boolean enabled) {
+
+        Registration registration = registration(id);
+        if (registration.isEnabled() == enabled) {
+            return this;
+        }
+        return with(new Registration(id, registration.getDriver(), registration.getPriority(), enabled));
+    }
+
+    /**
+     * The registered driver, enabled or not, or null.
+     */
+    public Driver get(String id) {
+
+        Registration registration = byId.get(id);
+        return registration != null ? registration.getDriver() : null;
+    }
+
+    /**
+     * The driver if it is registered, enabled or not, and of the given type,
+     * or null.
+     */
+    public <T extends Driver> T get(String id, Class<T> type) {
+
+        Driver driver = get(id);
+        return type.isInstance(driver) ? type.cast(driver) : null;
+    }
+
+    /**
+     * Enabled drivers of the given type, in order.
+     */
+    public <T extends Driver> List<T> find(Class<T> type) {
+
+        List<T> found = new ArrayList<>();
+        for (Driver driver : drivers.values()) {
+            if (type.isInstance(driver)) {
+                found.add(type.cast(driver));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Ordered candidate drivers for identifiers of the DID method.
+     */
+    public Map<String, Driver> forMethod(String method) {
+        return index.forMethod(method);
+    }
+
+    public Registration getRegistration(String id) {
+        return byId.get(id);
+    }
+
+    public List<Registration> getRegistrations() {
+        return registrations;
+    }
+
+    /**
+     * Enabled drivers by id, in the order they are tried.
+     */
+    public Map<String, Driver> getDrivers() {
+        return drivers;
+    }
+
+    public DriverIndex getIndex() {
+        return index;
+    }
+
+    public int size() {
+        return drivers.size();
+    }
+
+    public boolean isEmpty() {
+        return drivers.isEmpty();
+    }
+
+    /*
+     * Helper methods
+     */
+    private Registration registration(String id) {
+
+        Registration registration = byId.get(id);
+        if (registration == null) {
+            throw new IllegalArgumentException("No driver " + id);
+        }
+        return registration;
+    }
+
+    public static final class Registration {
+
+        private final String id;
+        private final Driver driver;
+        private final int priority;
+        private final boolean enabled;
+
+        public Registration(String id, Driver driver, int priority) {
+            this(id, driver, priority, true);
+        }
+
+        public Registration(String id, Driver driver, int priority, boolean enabled) {
+            this.id = id;
+            this.driver = driver;
+            this.priority = priority;
+            this.enabled = enabled;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Driver getDriver() {
+            return driver;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import jssi.resolver.driver.http.HttpConnectionPool;
+import jssi.resolver.local.cache.ResolveCache;
+import jssi.resolver.local.health.DriverHealth;
+import jssi.resolver.local.health.HealthChecker;
+import jssi.resolver.local.resilience.DriverGuard;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uniresolver.driver.Driver;
+
+/**
+ * Immutable state built from one version of config.json: the drivers, their
+ * dispatch index and the resources they share. A resolution that started on
+ * a snapshot keeps using it after a reload; closing the snapshot releases the
+ * HTTP pool, the race scheduler and the health checker.
+ *
+ * @author UBICUA
+ */
+public class DriverSnapshot implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DriverSnapshot.class);
+
+    static final DriverSnapshot EMPTY = new DriverSnapshot(DriverRegistry.EMPTY, null, null, null, Collections.emptyMap(), null, new DriverProperties(), BatchResolver.DEFAULT_PARALLELISM, BatchResolver.DEFAULT_MAX_IDENTIFIERS, BatchResolver.DEFAULT_TIMEOUT);
+
+    private final DriverRegistry registry;
+    private final ResolveCache cache;
+    private final HttpConnectionPool connectionPool;
+    private final DriverRace race;
+    private final Map<String, DriverGuard> guards;
+    private final HealthChecker healthChecker;
+    private final DriverProperties properties;
+    private final int batchParallelism;
+    private final int batchMaxIdentifiers;
+    private final long batchTimeout;
+
+    public DriverSnapshot(DriverRegistry registry, ResolveCache cache, HttpConnectionPool connectionPool, DriverRace race, Map<String, DriverGuard> guards, HealthChecker healthChecker, DriverProperties properties, int batchParallelism, int batchMaxIdentifiers, long batchTimeout) {
+        this.registry = registry;
+        this.cache = cache;
+        this.connectionPool = connectionPool;
+        this.race = race;
+        this.guards = Collections.unmodifiableMap(guards);
+        this.healthChecker = healthChecker;
+        this.properties = properties;
+        this.batchParallelism = batchParallelism;
+        this.batchMaxIdentifiers = batchMaxIdentifiers;
+        this.batchTimeout = batchTimeout;
+    }
+
+    /**
+     * Copy of the snapshot with another registry. The copy shares the
+     * resources of this snapshot.
+     */
+    DriverSnapshot withRegistry(DriverRegistry changed) {
+        return new DriverSnapshot(changed, cache, connectionPool, race, guards, healthChecker, properties, batchParallelism, batchMaxIdentifiers, batchTimeout);
+    }
+
+    public DriverRegistry getRegistry() {
+        return registry;
+    }
+
+    public Map<String, Driver> getDrivers() {
+        return registry.getDrivers();
+    }
+
+    public DriverIndex getIndex() {
+        return registry.getIndex();
+    }
+
+    public ResolveCache getCache() {
+        return cache;
+    }
+
+    public HttpConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    public DriverRace getRace() {
+        return race;
+    }
+
+    public DriverGuard getGuard(String id) {
+        return guards.get(id);
+    }
+
+    public Map<String, DriverGuard> getGuards() {
+        return guards;
+    }
+
+    public HealthChecker getHealthChecker() {
+        return healthChecker;
+    }
+
+    public DriverHealth getHealth(String id) {
+        return healthChecker != null ? healthChecker.getHealth(id) : null;
+    }
+
+    /**
+     * Cached properties of the drivers.
+     */
+    public DriverProperties getProperties() {
+        return properties;
+    }
+
+    public int getBatchParallelism() {
+        return batchParallelism;
+    }
+
+    public int getBatchMaxIdentifiers() {
+        return batchMaxIdentifiers;
+    }
+
+    /**
+     * Longest time (milliseconds) a batch response waits for its results, 0
+     * for no limit.
+     */
+    public long getBatchTimeout() {
+        return batchTimeout;
+    }
+
+    /**
+     * Candidate drivers of the identifier in the order they should be tried.
+     */
+    public Map<String, Driver> route(String identifier) {
+
+        Map<String, Driver> candidates = registry.getIndex().candidates(identifier);
+        return healthChecker != null ? healthChecker.route(candidates) : candidates;
+    }
+
+    @Override
+    public void close() {
+        if (healthChecker != null) {
+            healthChecker.close();
+        }
+        if (race != null) {
+            race.close();
+        }
+        if (connectionPool != null) {
+            try {
+                connectionPool.close();
+            } catch (IOException ex) {
+                LOG.warn(String.format("Cannot close HTTP pool: %s", ex.getMessage()));
+            }
+        }
+    }
+}
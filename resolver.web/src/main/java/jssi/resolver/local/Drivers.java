@@ -26,16 +26,44 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 import javax.enterprise.context.ApplicationScoped;
+import org.apache.http.client.config.RequestConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import jssi.resolver.driver.http.HttpConnectionPool;
 import jssi.resolver.driver.http.HttpDriver;
+import jssi.resolver.local.cache.MemoryResolveCache;
+import jssi.resolver.local.cache.ResolveCache;
+import jssi.resolver.local.health.DriverHealth;
+import jssi.resolver.local.health.HealthChecker;
+import jssi.resolver.local.resilience.Bulkhead;
+import jssi.resolver.local.resilience.CircuitBreaker;
+import jssi.resolver.local.resilience.DriverGuard;
 import uniresolver.driver.Driver;
 
 /**
+ * Drivers configured in config.json. The configuration is held in an
+ * immutable snapshot published through an atomic reference, so readers never
+ * lock: a resolution keeps the snapshot it started with. A reload replaces
+ * the snapshot as a whole and closes the resources of the replaced one after
+ * a grace delay; adding, removing, disabling or reprioritizing a driver
+ * replaces only its registry.
  *
  * @author UBICUA
  */
@@ -44,15 +72,307 @@ public class Drivers {
     
     private static final Logger LOG = LoggerFactory.getLogger(Drivers.class);
 
-    private final Map<String, Driver> drivers = new HashMap<String, Driver>();
+    public static final long DEFAULT_CLOSE_DELAY = 60000L;
 
-    public void init(String path) throws FileNotFoundException, IOException {
+    private final AtomicReference<DriverSnapshot> snapshot = new AtomicReference<>(DriverSnapshot.EMPTY);
 
-        final Gson gson = new Gson();
+    // guarded by this
+    private final Map<String, DriverRegistry.Registration> addedDrivers = new LinkedHashMap<>();
+    private final Map<String, List<String>> addedTestIdentifiers = new HashMap<>();
+    private final Set<String> disabledDrivers = new HashSet<>();
+    private String path = null;
+    private JsonObject cacheConfig = null;
+    private long closeDelay = DEFAULT_CLOSE_DELAY;
+    private ConfigWatcher watcher = null;
+    private ScheduledExecutorService retirer = null;
+
+    public synchronized void init(String path) throws FileNotFoundException, IOException {
+
+        JsonObject root = read(path);
+        JsonObject reload = root.has("reload") ? root.getAsJsonObject("reload") : new JsonObject();
+
+        this.path = path;
+        this.closeDelay = reload.has("closeDelay") ? reload.get("closeDelay").getAsLong() : DEFAULT_CLOSE_DELAY;
+
+        swap(load(root));
+
+        if (reload.has("enabled") && reload.get("enabled").getAsBoolean() && watcher == null) {
+            long debounce = reload.has("debounce") ? reload.get("debounce").getAsLong() : ConfigWatcher.DEFAULT_DEBOUNCE;
+            watcher = new ConfigWatcher(Paths.get(path), debounce, this::reload);
+            watcher.start();
+        }
+    }
+
+    /**
+     * Reads config.json again and replaces the current snapshot. If the file
+     * cannot be read or is not valid the current snapshot is kept.
+     */
+    public synchronized void reload() {
+
+        if (path == null) {
+            return;
+        }
+
+        DriverSnapshot reloaded;
+        try {
+            reloaded = load(read(path));
+        } catch (IOException | RuntimeException ex) {
+            LOG.error(String.format("Cannot reload %s, keeping the current drivers: %s", path, ex.getMessage()), ex);
+            return;
+        }
+
+        swap(reloaded);
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Reloaded " + reloaded.getDrivers().size() + " drivers from " + path);
+        }
+    }
+
+    /**
+     * Current snapshot. Callers needing several consistent values should
+     * read them from the same snapshot.
+     */
+    public DriverSnapshot snapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Current driver registry.
+     */
+    public DriverRegistry getRegistry() {
+        return snapshot.get().getRegistry();
+    }
+
+    /**
+     * Registers a driver, replacing the one with the same id. Drivers added
+     * this way are kept when config.json is reloaded. The driver is not
+     * probed by the health checker and is routed as healthy.
+     */
+    public void addDriver(String id, Driver driver, int priority) {
+        addDriver(id, driver, priority, Collections.emptyList());
+    }
+
+    /**
+     * Registers a driver, replacing the one with the same id, and probes it
+     * with the test identifiers when health checking is configured. Drivers
+     * added this way are kept when config.json is reloaded.
+     */
+    public synchronized void addDriver(String id, Driver driver, int priority, List<String> testIdentifiers) {
+
+        DriverRegistry.Registration added = new DriverRegistry.Registration(id, driver, priority, !disabledDrivers.contains(id));
+        addedDrivers.put(id, added);
+        addedTestIdentifiers.put(id, Collections.unmodifiableList(new ArrayList<>(testIdentifiers)));
+        update(registry -> registry.with(added));
+
+        HealthChecker healthChecker = snapshot.get().getHealthChecker();
+        if (healthChecker != null) {
+            healthChecker.register(id, driver, testIdentifiers);
+        }
+    }
+
+    /**
+     * Unregisters a driver until config.json is reloaded, or for good if it
+     * was added with addDriver.
+     */
+    public synchronized boolean removeDriver(String id) {
+
+        addedDrivers.remove(id);
+        addedTestIdentifiers.remove(id);
+        if (getRegistry().get(id) == null) {
+            return false;
+        }
+
+        update(registry -> registry.without(id));
+
+        HealthChecker healthChecker = snapshot.get().getHealthChecker();
+        if (healthChecker != null) {
+            healthChecker.unregister(id);
+        }
+        return true;
+    }
+
+    /**
+     * Changes the priority of a driver. Drivers are tried by descending
+     * priority.
+     */
+    public synchronized void setPriority(String id, int priority) {
+
+        DriverRegistry.Registration added = addedDrivers.get(id);
+        if (added != null) {
+            addedDrivers.put(id, new DriverRegistry.Registration(id, added.getDriver(), priority, added.isEnabled()));
+        }
+
+        update(registry -> registry.withPriority(id, priority));
+    }
+
+    /**
+     * Enables or disables a driver. A disabled driver stays registered, and
+     * keeps being probed, but no identifier is dispatched to it. Unlike other
+     * changes, the state is kept when config.json is reloaded.
+     */
+    public synchronized void setEnabled(String id, boolean enabled) {
+
+        update(registry -> registry.withEnabled(id, enabled));
+
+        if (enabled) {
+            disabledDrivers.remove(id);
+        } else {
+            disabledDrivers.add(id);
+        }
+
+        DriverRegistry.Registration added = addedDrivers.get(id);
+        if (added != null) {
+            addedDrivers.put(id, new DriverRegistry.Registration(id, added.getDriver(), added.getPriority(), enabled));
+        }
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Driver '" + id + "' " + (enabled ? "enabled" : "disabled") + ", dispatch table: " + getIndex().table());
+        }
+    }
+
+    /**
+     * Changes the timeouts (milliseconds) of an HTTP driver, keeping those
+     * that are null, until config.json is reloaded.
+     */
+    public void setTimeouts(String id, Integer connectTimeout, Integer socketTimeout, Integer requestTimeout) {
+
+        HttpDriver driver = httpDriver(id);
+        RequestConfig current = driver.getRequestConfig() != null ? driver.getRequestConfig() : driver.getConnectionPool().getRequestConfig();
+        driver.setRequestConfig(HttpConnectionPool.requestConfig(current, connectTimeout, socketTimeout, requestTimeout));
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Driver '" + id + "' timeouts: " + driver.getRequestConfig());
+        }
+    }
+
+    /**
+     * Changes the requests an HTTP driver has in flight at once until
+     * config.json is reloaded. The limit is per driver, the pooled
+     * connections to its host are raised to fit it.
+     */
+    public void setMaxConnections(String id, int maxConnections) {
+
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Max connections must be positive");
+        }
+
+        HttpDriver driver = httpDriver(id);
+        driver.setMaxConnections(maxConnections);
+        driver.getConnectionPool().ensureMaxPerRoute(driver.getResolveUri(), maxConnections);
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Driver '" + id + "' max connections: " + maxConnections);
+        }
+    }
+
+    /**
+     * Changes several settings of a driver at once, keeping those that are
+     * null. Every value is checked before any is applied, so a rejected
+     * change leaves the driver as it was, and the priority and enabled state
+     * are published in a single snapshot.
+     */
+    public synchronized void updateDriver(String id, Boolean enabled, Integer priority, Integer connectTimeout, Integer socketTimeout, Integer requestTimeout, Integer maxConnections) {
+
+        if (getRegistry().getRegistration(id) == null) {
+            throw new IllegalArgumentException("No driver " + id);
+        }
+        if (maxConnections != null && maxConnections < 1) {
+            throw new IllegalArgumentException("Max connections must be positive");
+        }
+
+        if (connectTimeout != null || socketTimeout != null || requestTimeout != null || maxConnections != null) {
+            httpDriver(id);
+        }
+
+        // all checked, apply
+        if (connectTimeout != null || socketTimeout != null || requestTimeout != null) {
+            setTimeouts(id, connectTimeout, socketTimeout, requestTimeout);
+        }
+        if (maxConnections != null) {
+            setMaxConnections(id, maxConnections);
+        }
+
+        if (priority == null && enabled == null) {
+            return;
+        }
+
+        update(registry -> {
+            DriverRegistry next = registry;
+            if (priority != null) {
+                next = next.withPriority(id, priority);
+            }
+            if (enabled != null) {
+                next = next.withEnabled(id, enabled);
+            }
+            return next;
+        });
+
+        if (enabled != null) {
+            if (enabled) {
+                disabledDrivers.remove(id);
+            } else {
+                disabledDrivers.add(id);
+            }
+        }
+
+        DriverRegistry.Registration added = addedDrivers.get(id);
+        if (added != null) {
+            addedDrivers.put(id, new DriverRegistry.Registration(id, added.getDriver(),
+                    priority != null ? priority : added.getPriority(), enabled != null ? enabled : added.isEnabled()));
+        }
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Driver '" + id + "' updated, dispatch table: " + getIndex().table());
+        }
+    }
+
+    /*
+     * Helper methods
+     */
+    private HttpDriver httpDriver(String id) {
+
+        Driver driver = getRegistry().get(id);
+        if (driver == null) {
+            throw new IllegalArgumentException("No driver " + id);
+        }
+        if (!(driver instanceof HttpDriver) || ((HttpDriver) driver).getConnectionPool() == null) {
+            throw new IllegalArgumentException("Driver " + id + " is not a pooled HTTP driver");
+        }
+        return (HttpDriver) driver;
+    }
+
+    private JsonObject read(String path) throws FileNotFoundException, IOException {
 
         try (Reader reader = new FileReader(new File(path))) {
+            return new Gson().fromJson(reader, JsonObject.class);
+        }
+    }
+
+    private DriverSnapshot load(JsonObject root) {
 
-            JsonObject root = gson.fromJson(reader, JsonObject.class);
+        JsonObject cacheSection = root.has("cache") ? root.getAsJsonObject("cache") : null;
+        MemoryResolveCache memoryCache;
+
+        // keep the cached results if the cache settings did not change
+        if (cacheSection != null && cacheSection.equals(cacheConfig) && snapshot().getCache() instanceof MemoryResolveCache) {
+            memoryCache = (MemoryResolveCache) snapshot().getCache();
+        } else {
+            memoryCache = cacheSection != null ? initCache(cacheSection) : null;
+        }
+
+        HttpConnectionPool pool = initConnectionPool(root.has("http") ? root.getAsJsonObject("http") : new JsonObject());
+        DriverRace driverRace = root.has("dispatch") ? initRace(root.getAsJsonObject("dispatch")) : null;
+
+        try {
+            JsonObject batch = root.has("batch") ? root.getAsJsonObject("batch") : new JsonObject();
+            JsonObject resilience = root.has("resilience") ? root.getAsJsonObject("resilience") : null;
+            JsonObject health = root.has("health") ? root.getAsJsonObject("health") : null;
+            JsonObject properties = root.has("properties") ? root.getAsJsonObject("properties") : new JsonObject();
+            Map<String, Driver> drivers = new LinkedHashMap<>();
+            List<DriverRegistry.Registration> registrations = new ArrayList<>();
+            Map<String, DriverGuard> driverGuards = new HashMap<>();
+            Map<String, List<String>> testIdentifiers = new HashMap<>();
+            Map<String, Long> propertiesTimeouts = new HashMap<>();
             JsonArray jsonArrayDrivers = root.getAsJsonArray("drivers");
 
             int i = 0;
@@ -69,6 +389,15 @@ public class Drivers {
                 String imagePort = item.has("imagePort") ? item.get("imagePort").getAsString() : null;
                 String imageProperties = item.has("imageProperties") ? item.get("imageProperties").getAsString() : null;
                 String url = item.has("url") ? item.get("url").getAsString() : null;
+                Long cacheTtl = item.has("cacheTtl") ? item.get("cacheTtl").getAsLong() : null;
+                Integer maxConnections = item.has("maxConnections") ? item.get("maxConnections").getAsInt() : null;
+                Integer connectTimeout = item.has("connectTimeout") ? item.get("connectTimeout").getAsInt() : null;
+                Integer socketTimeout = item.has("socketTimeout") ? item.get("socketTimeout").getAsInt() : null;
+                Integer requestTimeout = item.has("requestTimeout") ? item.get("requestTimeout").getAsInt() : null;
+                Integer maxConcurrentCalls = item.has("maxConcurrentCalls") ? item.get("maxConcurrentCalls").getAsInt() : null;
+                Long propertiesTimeout = item.has("propertiesTimeout") ? item.get("propertiesTimeout").getAsLong() : null;
+                int priority = item.has("priority") ? item.get("priority").getAsInt() : DriverRegistry.DEFAULT_PRIORITY;
+                JsonArray tests = item.has("testIdentifiers") ? item.getAsJsonArray("testIdentifiers") : null;
 
                 if (pattern == null) {
                     throw new IllegalArgumentException("Missing 'pattern' entry in driver configuration.");
@@ -97,6 +426,13 @@ public class Drivers {
                     }
                 }
 
+                driver.setConnectionPool(pool);
+                driver.setRequestConfig(pool.requestConfig(connectTimeout, socketTimeout, requestTimeout));
+                if (maxConnections != null) {
+                    driver.setMaxConnections(maxConnections);
+                    pool.ensureMaxPerRoute(driver.getResolveUri(), maxConnections);
+                }
+
                 if (id == null) {
                     id = "driver";
                     if (image != null) {
@@ -108,16 +444,295 @@ public class Drivers {
                 }
 
                 drivers.put(id, driver);
+                registrations.add(new DriverRegistry.Registration(id, driver, priority, !disabledDrivers.contains(id)));
+
+                if (memoryCache != null && cacheTtl != null) {
+                    memoryCache.setTtl(id, cacheTtl * 1000);
+                }
+
+                if (propertiesTimeout != null) {
+                    propertiesTimeouts.put(id, propertiesTimeout);
+                }
+
+                if (resilience != null) {
+                    driverGuards.put(id, initGuard(id, resilience, maxConcurrentCalls));
+                }
+
+                if (tests != null && tests.size() > 0) {
+                    List<String> identifiers = new ArrayList<>();
+                    for (JsonElement test : tests) {
+                        identifiers.add(test.getAsString());
+                    }
+                    testIdentifiers.put(id, identifiers);
+                }
 
                 if (LOG.isInfoEnabled()) {
                     LOG.info("Added driver '" + id + "' at " + driver.getResolveUri() + " (" + driver.getPropertiesUri() + ")");
                 }
             }
+
+            for (DriverRegistry.Registration added : addedDrivers.values()) {
+                drivers.put(added.getId(), added.getDriver());
+                registrations.add(added);
+                List<String> addedTests = addedTestIdentifiers.getOrDefault(added.getId(), Collections.emptyList());
+                if (addedTests.isEmpty()) {
+                    testIdentifiers.remove(added.getId());
+                } else {
+                    testIdentifiers.put(added.getId(), addedTests);
+                }
+            }
+
+            int batchParallelism = batch.has("parallelism") ? batch.get("parallelism").getAsInt() : BatchResolver.DEFAULT_PARALLELISM;
+            int batchMaxIdentifiers = batch.has("maxIdentifiers") ? batch.get("maxIdentifiers").getAsInt() : BatchResolver.DEFAULT_MAX_IDENTIFIERS;
+            long batchTimeout = batch.has("timeout") ? batch.get("timeout").getAsLong() : BatchResolver.DEFAULT_TIMEOUT;
+            long propertiesTtl = properties.has("ttl") ? properties.get("ttl").getAsLong() * 1000 : DriverProperties.DEFAULT_TTL;
+            long defaultPropertiesTimeout = properties.has("timeout") ? properties.get("timeout").getAsLong() : DriverProperties.DEFAULT_TIMEOUT;
+            DriverProperties driverProperties = new DriverProperties(propertiesTtl, defaultPropertiesTimeout, propertiesTimeouts);
+            HealthChecker healthChecker = health != null ? initHealthChecker(health, drivers, testIdentifiers, memoryCache) : null;
+
+            cacheConfig = cacheSection;
+
+            return new DriverSnapshot(new DriverRegistry(registrations), memoryCache, pool, driverRace, driverGuards, healthChecker, driverProperties, batchParallelism, batchMaxIdentifiers, batchTimeout);
+        } catch (RuntimeException ex) {
+            if (driverRace != null) {
+                driverRace.close();
+            }
+            try {
+                pool.close();
+            } catch (IOException closeEx) {
+                LOG.warn(String.format("Cannot close HTTP pool: %s", closeEx.getMessage()));
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Publishes the snapshot. The health checker of the previous one stops at
+     * once, its pools are closed once the requests started on it are over.
+     */
+    private void swap(DriverSnapshot next) {
+
+        DriverSnapshot previous = snapshot.getAndSet(next);
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Dispatch table: " + next.getIndex().table());
+        }
+
+        if (previous == DriverSnapshot.EMPTY) {
+            return;
+        }
+
+        if (previous.getHealthChecker() != null) {
+            previous.getHealthChecker().close();
+        }
+
+        if (retirer == null) {
+            retirer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "driver-retirer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        retirer.schedule(previous::close, closeDelay, TimeUnit.MILLISECONDS);
+    }
+
+    private void update(UnaryOperator<DriverRegistry> change) {
+        snapshot.updateAndGet(current -> current.withRegistry(change.apply(current.getRegistry())));
+    }
+
+    private HealthChecker initHealthChecker(JsonObject item, Map<String, Driver> drivers, Map<String, List<String>> testIdentifiers, ResolveCache cache) {
+
+        if (item.has("enabled") && !item.get("enabled").getAsBoolean()) {
+            return null;
+        }
+
+        long interval = item.has("interval") ? item.get("interval").getAsLong() : HealthChecker.DEFAULT_INTERVAL;
+        long timeout = item.has("timeout") ? item.get("timeout").getAsLong() : HealthChecker.DEFAULT_TIMEOUT;
+        int windowSize = item.has("windowSize") ? item.get("windowSize").getAsInt() : DriverHealth.DEFAULT_WINDOW_SIZE;
+        int unhealthyAfter = item.has("unhealthyAfter") ? item.get("unhealthyAfter").getAsInt() : DriverHealth.DEFAULT_UNHEALTHY_AFTER;
+        boolean warm = item.has("warm") ? item.get("warm").getAsBoolean() : true;
+        HealthChecker.Routing routing = item.has("routing") ? HealthChecker.Routing.valueOf(item.get("routing").getAsString().toUpperCase()) : HealthChecker.Routing.CONFIGURED;
+
+        HealthChecker checker = new HealthChecker(drivers, testIdentifiers, cache, interval, timeout, routing, windowSize, unhealthyAfter);
+        checker.start(warm);
+        return checker;
+    }
+
+    private DriverGuard initGuard(String id, JsonObject item, Integer maxConcurrentCalls) {
+
+        int windowSize = item.has("windowSize") ? item.get("windowSize").getAsInt() : CircuitBreaker.DEFAULT_WINDOW_SIZE;
+        int minimumCalls = item.has("minimumCalls") ? item.get("minimumCalls").getAsInt() : CircuitBreaker.DEFAULT_MINIMUM_CALLS;
+        int failureRateThreshold = item.has("failureRateThreshold") ? item.get("failureRateThreshold").getAsInt() : CircuitBreaker.DEFAULT_FAILURE_RATE_THRESHOLD;
+        int slowCallRateThreshold = item.has("slowCallRateThreshold") ? item.get("slowCallRateThreshold").getAsInt() : CircuitBreaker.DEFAULT_SLOW_CALL_RATE_THRESHOLD;
+        long slowCallDuration = item.has("slowCallDuration") ? item.get("slowCallDuration").getAsLong() : CircuitBreaker.DEFAULT_SLOW_CALL_DURATION;
+        long openDuration = item.has("openDuration") ? item.get("openDuration").getAsLong() : CircuitBreaker.DEFAULT_OPEN_DURATION;
+        int halfOpenCalls = item.has("halfOpenCalls") ? item.get("halfOpenCalls").getAsInt() : CircuitBreaker.DEFAULT_HALF_OPEN_CALLS;
+
+        if (maxConcurrentCalls == null) {
+            maxConcurrentCalls = item.has("maxConcurrentCalls") ? item.get("maxConcurrentCalls").getAsInt() : Bulkhead.DEFAULT_MAX_CONCURRENT_CALLS;
+        }
+
+        CircuitBreaker circuitBreaker = new CircuitBreaker(id, windowSize, minimumCalls, failureRateThreshold, slowCallRateThreshold, slowCallDuration, openDuration, halfOpenCalls);
+        return new DriverGuard(id, circuitBreaker, new Bulkhead(maxConcurrentCalls));
+    }
+
+    private DriverRace initRace(JsonObject item) {
+
+        String mode = item.has("mode") ? item.get("mode").getAsString() : "sequential";
+        if (!"race".equalsIgnoreCase(mode)) {
+            return null;
+        }
+
+        long hedgeDelay = item.has("hedgeDelay") ? item.get("hedgeDelay").getAsLong() : DriverRace.DEFAULT_HEDGE_DELAY;
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Racing matching drivers with hedge delay " + hedgeDelay + " ms");
+        }
+
+        return new DriverRace(hedgeDelay);
+    }
+
+    private HttpConnectionPool initConnectionPool(JsonObject item) {
+
+        int maxTotal = item.has("maxTotal") ? item.get("maxTotal").getAsInt() : HttpConnectionPool.DEFAULT_MAX_TOTAL;
+        int maxPerRoute = item.has("maxPerRoute") ? item.get("maxPerRoute").getAsInt() : HttpConnectionPool.DEFAULT_MAX_PER_ROUTE;
+        int connectTimeout = item.has("connectTimeout") ? item.get("connectTimeout").getAsInt() : HttpConnectionPool.DEFAULT_CONNECT_TIMEOUT;
+        int socketTimeout = item.has("socketTimeout") ? item.get("socketTimeout").getAsInt() : HttpConnectionPool.DEFAULT_SOCKET_TIMEOUT;
+        int requestTimeout = item.has("requestTimeout") ? item.get("requestTimeout").getAsInt() : HttpConnectionPool.DEFAULT_REQUEST_TIMEOUT;
+        long idleTimeout = item.has("idleTimeout") ? item.get("idleTimeout").getAsLong() : HttpConnectionPool.DEFAULT_IDLE_TIMEOUT;
+        long keepAlive = item.has("keepAlive") ? item.get("keepAlive").getAsLong() : HttpConnectionPool.DEFAULT_KEEP_ALIVE;
+
+        try {
+            return new HttpConnectionPool(maxTotal, maxPerRoute, connectTimeout, socketTimeout, requestTimeout, idleTimeout, keepAlive);
+        } catch (IOException ex) {
+            // the I/O reactor of the asynchronous client cannot start
+            throw new UncheckedIOException("Cannot create HTTP connection pool: " + ex.getMessage(), ex);
+        }
+    }
+
+    private MemoryResolveCache initCache(JsonObject item) {
+
+        if (item.has("enabled") && !item.get("enabled").getAsBoolean()) {
+            return null;
         }
+
+        MemoryResolveCache.Eviction eviction = item.has("eviction") ? MemoryResolveCache.Eviction.valueOf(item.get("eviction").getAsString().toUpperCase()) : MemoryResolveCache.Eviction.LRU;
+        int maxEntries = item.has("maxEntries") ? item.get("maxEntries").getAsInt() : MemoryResolveCache.DEFAULT_MAX_ENTRIES;
+        long maxBytes = item.has("maxBytes") ? item.get("maxBytes").getAsLong() : MemoryResolveCache.DEFAULT_MAX_BYTES;
+        long ttl = item.has("ttl") ? item.get("ttl").getAsLong() * 1000 : MemoryResolveCache.DEFAULT_TTL;
+        long negativeTtl = item.has("negativeTtl") ? item.get("negativeTtl").getAsLong() * 1000 : MemoryResolveCache.DEFAULT_NEGATIVE_TTL;
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Resolve cache " + eviction + " with " + maxEntries + " entries, " + maxBytes + " bytes, ttl " + ttl + " ms, negative ttl " + negativeTtl + " ms");
+        }
+
+        return new MemoryResolveCache(eviction, maxEntries, maxBytes, ttl, negativeTtl);
     }
 
     public Map<String, Driver> getDrivers() {
-        return drivers;
+        return snapshot.get().getDrivers();
+    }
+
+    /**
+     * Adds a driver after the configured ones with the default priority.
+     */
+    public void addDriver(String id, Driver driver) {
+        addDriver(id, driver, DriverRegistry.DEFAULT_PRIORITY);
+    }
+
+    public HttpConnectionPool getConnectionPool() {
+        return snapshot.get().getConnectionPool();
+    }
+
+    /**
+     * Race of the matching drivers when the dispatch mode is "race", or null
+     * when the drivers are tried one after another.
+     */
+    public DriverRace getRace() {
+        return snapshot.get().getRace();
+    }
+
+    /**
+     * Identifiers resolved at the same time by a batch request.
+     */
+    public int getBatchParallelism() {
+        return snapshot.get().getBatchParallelism();
+    }
+
+    /**
+     * Largest number of identifiers accepted in a batch request.
+     */
+    public int getBatchMaxIdentifiers() {
+        return snapshot.get().getBatchMaxIdentifiers();
+    }
+
+    /**
+     * Longest time (milliseconds) a batch response waits for its results, 0
+     * for no limit.
+     */
+    public long getBatchTimeout() {
+        return snapshot.get().getBatchTimeout();
+    }
+
+    /**
+     * Circuit breaker and bulkhead of the driver, or null if the "resilience"
+     * section is not configured.
+     */
+    public DriverGuard getGuard(String id) {
+        return snapshot.get().getGuard(id);
+    }
+
+    public Map<String, DriverGuard> getGuards() {
+        return snapshot.get().getGuards();
+    }
+
+    /**
+     * Health checker configured in the "health" section, or null.
+     */
+    public HealthChecker getHealthChecker() {
+        return snapshot.get().getHealthChecker();
+    }
+
+    /**
+     * Health of the driver, or null if it is not probed.
+     */
+    public DriverHealth getHealth(String id) {
+        return snapshot.get().getHealth(id);
+    }
+
+    /**
+     * Candidate drivers of the identifier in the order they should be tried.
+     */
+    public Map<String, Driver> route(String identifier) {
+        return snapshot.get().route(identifier);
+    }
+
+    public synchronized void close() {
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException ex) {
+                LOG.warn(String.format("Cannot stop configuration watcher: %s", ex.getMessage()));
+            }
+        }
+        if (retirer != null) {
+            // close the retired snapshots now
+            for (Runnable retired : retirer.shutdownNow()) {
+                retired.run();
+            }
+        }
+        snapshot.get().close();
+    }
+
+    public DriverIndex getIndex() {
+        return snapshot.get().getIndex();
+    }
+
+    /**
+     * Resolve cache configured in the "cache" section, or null if disabled.
+     */
+    public ResolveCache getCache() {
+        return snapshot.get().getCache();
     }
     
 }
@@ -19,10 +19,23 @@ package jssi.resolver.local;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.ServiceLoader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
 
 import foundation.identity.did.DIDDocument;
 import foundation.identity.did.DIDURL;
@@ -35,20 +48,75 @@ import java.io.Serializable;
 import uniresolver.ResolutionException;
 import uniresolver.UniResolver;
 import uniresolver.driver.Driver;
+import jssi.resolver.driver.http.HttpDriver;
+import jssi.resolver.local.cache.CacheEntry;
+import jssi.resolver.local.cache.ResolveCache;
 import jssi.resolver.local.extensions.Extension;
 import jssi.resolver.local.extensions.ExtensionStatus;
+import jssi.resolver.local.health.DriverHealth;
+import jssi.resolver.local.metrics.ResolverMetrics;
+import jssi.resolver.local.resilience.DriverGuard;
+import jssi.resolver.local.resilience.DriverUnavailableException;
 import uniresolver.result.ResolveResult;
 
-
+/**
+ * Resolution engine shared by all the requests. The extension chain is loaded
+ * once from META-INF/services and never changes afterwards; the drivers, the
+ * cache and the in-flight resolutions are thread-safe.
+ *
+ * @author UBICUA
+ */
+@ApplicationScoped
 public class LocalUniResolver implements UniResolver, Serializable {
 
     private static final Logger LOG = LoggerFactory.getLogger(LocalUniResolver.class);
 
-    private List<Extension> extensions = new ArrayList<Extension>();
+    private final List<Extension> extensions;
     private final Drivers drivers;
-    
-    public LocalUniResolver(Drivers drivers) {
+    private final SingleFlight singleFlight;
+    private final ResolverMetrics metrics;
+
+    @Resource
+    private ManagedExecutorService managedExecutor;
+
+    private Executor executor = ForkJoinPool.commonPool();
+
+    /**
+     * Required by the client proxy of the container.
+     */
+    protected LocalUniResolver() {
+        this.extensions = Collections.emptyList();
+        this.drivers = null;
+        this.singleFlight = null;
+        this.metrics = null;
+    }
+
+    @Inject
+    public LocalUniResolver(Drivers drivers, SingleFlight singleFlight, ResolverMetrics metrics) {
+        this(drivers, singleFlight, metrics, loadExtensions());
+    }
+
+    public LocalUniResolver(Drivers drivers, SingleFlight singleFlight, ResolverMetrics metrics, List<Extension> extensions) {
         this.drivers = drivers;
+        this.singleFlight = singleFlight;
+        this.metrics = metrics;
+        this.extensions = Collections.unmodifiableList(new ArrayList<>(extensions));
+    }
+
+    @PostConstruct
+    void init() {
+
+        if (managedExecutor != null) {
+            executor = managedExecutor;
+        }
+
+        if (metrics != null && drivers != null) {
+            metrics.cache(drivers::getCache);
+        }
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Resolver extensions: " + extensions);
+        }
     }
     
     @Override
@@ -63,34 +131,64 @@ public class LocalUniResolver implements UniResolver, Serializable {
             throw new NullPointerException();
         }
 
+        long started = System.nanoTime();
+        metrics.resolutionStarted();
+
+        ResolveResult resolveResult = null;
+        Throwable failure = null;
+
+        try {
+            resolveResult = resolveIdentifier(identifier, options);
+            return resolveResult;
+        } catch (ResolutionException | RuntimeException ex) {
+            failure = ex;
+            throw ex;
+        } finally {
+            metrics.resolutionCompleted(metricsMethod(identifier), started, resolveResult, failure);
+        }
+    }
+
+    /**
+     * Resolves the identifier without blocking the calling thread on driver
+     * I/O. The extensions after resolution run on the executor.
+     */
+    public CompletableFuture<ResolveResult> resolveAsync(String identifier, Map<String, String> options) {
+
+        if (identifier == null) {
+            throw new NullPointerException();
+        }
+
+        long started = System.nanoTime();
+        metrics.resolutionStarted();
+
+        CompletableFuture<ResolveResult> resolveResult;
+
+        try {
+            resolveResult = resolveIdentifierAsync(identifier, options);
+        } catch (RuntimeException ex) {
+            resolveResult = failed(ex);
+        }
+
+        resolveResult.whenComplete((result, ex) -> metrics.resolutionCompleted(metricsMethod(identifier), started, result, ex));
+        return resolveResult;
+    }
+
+    private ResolveResult resolveIdentifier(String identifier, Map<String, String> options) throws ResolutionException {
+
         if (drivers.getDrivers().isEmpty()) {
             throw new ResolutionException("No drivers configured.");
         }
         // start time
         long start = System.currentTimeMillis();
+        ResolutionTiming timing = ResolutionTiming.of(options);
         // prepare resolve result
         ResolveResult resolveResult = ResolveResult.build();
         ExtensionStatus extensionStatus = new ExtensionStatus();
         // parse DID URL
-        DIDURL didUrl = null;
-
-        try {
-            didUrl = DIDURL.fromString(identifier);
-            resolveResult.getDidResolutionMetadata().put("didUrl", didUrl);
-            LOG.debug("Identifier " + identifier + " is a valid DID URL: " + didUrl);
-        } catch (IllegalArgumentException | ParserException ex) {
-            LOG.debug("Identifier " + identifier + " is not a valid DID URL: " + ex.getMessage());
-        }
+        DIDURL didUrl = parseDidUrl(identifier, resolveResult, timing);
 
         // execute extensions (before)
-        if (!extensionStatus.skipExtensionsBefore()) {
-            for (Extension extension : this.getExtensions()) {
-                extensionStatus.or(extension.beforeResolve(identifier, didUrl, options, resolveResult, this));
-                if (extensionStatus.skipExtensionsBefore()) {
-                    break;
-                }
-            }
-        }
+        beforeResolve(identifier, didUrl, options, resolveResult, extensionStatus, timing);
 
         // try all drivers
         if (!extensionStatus.skipDriver()) {
@@ -100,51 +198,90 @@ public class LocalUniResolver implements UniResolver, Serializable {
             }
 
             ResolveResult driverResolveResult = ResolveResult.build();
-            resolveWithDrivers(resolveIdentifier, driverResolveResult);
-            resolveResult.setDidDocument(driverResolveResult.getDidDocument());
-            resolveResult.setDidDocumentMetadata(driverResolveResult.getDidDocumentMetadata());
-            resolveResult.getDidResolutionMetadata().putAll(driverResolveResult.getDidResolutionMetadata());
+            resolveWithDrivers(resolveIdentifier, options, driverResolveResult, timing);
+            merge(driverResolveResult, resolveResult);
         }
 
         // execute extensions (after)
-        if (!extensionStatus.skipExtensionsAfter()) {
-            for (Extension extension : this.getExtensions()) {
-                extensionStatus.or(extension.afterResolve(identifier, didUrl, options, resolveResult, this));
-                if (extensionStatus.skipExtensionsAfter()) {
-                    break;
-                }
-            }
-        }
+        afterResolve(identifier, didUrl, options, resolveResult, extensionStatus, timing);
 
         // stop time
         long stop = System.currentTimeMillis();
         resolveResult.getDidResolutionMetadata().put("duration", stop - start);
+        if (timing.isEnabled()) {
+            resolveResult.getDidResolutionMetadata().put(ResolutionTiming.OPTION, timing.toMap());
+        }
         // done
         return resolveResult;
     }
 
-    @Override
-    public Map<String, Map<String, Object>> properties() throws ResolutionException {
+    private CompletableFuture<ResolveResult> resolveIdentifierAsync(String identifier, Map<String, String> options) {
 
         if (drivers.getDrivers().isEmpty()) {
-            throw new ResolutionException("No drivers configured.");
+            return failed(new ResolutionException("No drivers configured."));
+        }
+        // start time
+        long start = System.currentTimeMillis();
+        ResolutionTiming timing = ResolutionTiming.of(options);
+        // prepare resolve result
+        ResolveResult resolveResult = ResolveResult.build();
+        ExtensionStatus extensionStatus = new ExtensionStatus();
+        // parse DID URL
+        DIDURL didUrl = parseDidUrl(identifier, resolveResult, timing);
+
+        // execute extensions (before)
+        try {
+            beforeResolve(identifier, didUrl, options, resolveResult, extensionStatus, timing);
+        } catch (ResolutionException ex) {
+            return failed(ex);
         }
 
-        Map<String, Map<String, Object>> properties = new HashMap<>();
+        // try all drivers
+        CompletableFuture<ResolveResult> driverResolveResult;
 
-        for (Entry<String, Driver> driver : drivers.getDrivers().entrySet()) {
+        if (!extensionStatus.skipDriver()) {
+            String resolveIdentifier = didUrl != null ? didUrl.getDid().getDidString() : identifier;
             if (LOG.isDebugEnabled()) {
-                LOG.debug("Loading properties for driver " + driver.getKey() + " (" + driver.getValue().getClass().getSimpleName() + ")");
+                LOG.debug("Resolving identifier asynchronously: " + resolveIdentifier);
+            }
+            driverResolveResult = resolveWithDriversAsync(resolveIdentifier, options, timing);
+        } else {
+            driverResolveResult = CompletableFuture.completedFuture(null);
+        }
+
+        return driverResolveResult.thenApplyAsync(result -> {
+
+            if (result != null) {
+                merge(result, resolveResult);
             }
 
-            Map<String, Object> driverProperties = driver.getValue().properties();
-            if (driverProperties == null) {
-                driverProperties = Collections.emptyMap();
+            // execute extensions (after)
+            try {
+                afterResolve(identifier, didUrl, options, resolveResult, extensionStatus, timing);
+            } catch (ResolutionException ex) {
+                throw new CompletionException(ex);
             }
 
-            properties.put(driver.getKey(), driverProperties);
+            // stop time
+            long stop = System.currentTimeMillis();
+            resolveResult.getDidResolutionMetadata().put("duration", stop - start);
+            if (timing.isEnabled()) {
+                resolveResult.getDidResolutionMetadata().put(ResolutionTiming.OPTION, timing.toMap());
+            }
+            // done
+            return resolveResult;
+        }, executor);
+    }
+
+    @Override
+    public Map<String, Map<String, Object>> properties() throws ResolutionException {
+
+        if (drivers.getDrivers().isEmpty()) {
+            throw new ResolutionException("No drivers configured.");
         }
 
+        Map<String, Map<String, Object>> properties = propertiesAsync().join();
+
         if (LOG.isDebugEnabled()) {
             LOG.debug("Loading properties: " + properties);
         }
@@ -152,30 +289,478 @@ public class LocalUniResolver implements UniResolver, Serializable {
         return properties;
     }
 
+    /**
+     * Properties of every driver, in dispatch order. The drivers are asked
+     * in parallel and a driver that fails or times out gets its error in its
+     * properties, so the future never completes exceptionally.
+     */
+    public CompletableFuture<Map<String, Map<String, Object>>> propertiesAsync() {
+
+        Map<String, CompletableFuture<Map<String, Object>>> driverProperties = driverPropertiesAsync();
+
+        return CompletableFuture.allOf(driverProperties.values().toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            Map<String, Map<String, Object>> properties = new LinkedHashMap<>();
+            for (Entry<String, CompletableFuture<Map<String, Object>>> driver : driverProperties.entrySet()) {
+                properties.put(driver.getKey(), driver.getValue().join());
+            }
+            return properties;
+        });
+    }
+
+    /**
+     * Properties of each driver, in dispatch order, as soon as they are
+     * loaded. The futures never complete exceptionally.
+     */
+    public Map<String, CompletableFuture<Map<String, Object>>> driverPropertiesAsync() {
+
+        DriverSnapshot snapshot = drivers.snapshot();
+        Map<String, CompletableFuture<Map<String, Object>>> driverProperties = new LinkedHashMap<>();
+
+        for (Entry<String, Driver> driver : snapshot.getDrivers().entrySet()) {
+            driverProperties.put(driver.getKey(), propertiesAsync(driver.getKey(), driver.getValue(), snapshot));
+        }
+
+        return driverProperties;
+    }
+
+    /**
+     * Properties of a driver, including the state of its circuit breaker and
+     * bulkhead and its health.
+     */
+    public Map<String, Object> properties(String driverId) throws ResolutionException {
+
+        DriverSnapshot snapshot = drivers.snapshot();
+        Driver driver = snapshot.getDrivers().get(driverId);
+        if (driver == null) {
+            throw new ResolutionException("No driver " + driverId);
+        }
+
+        return propertiesAsync(driverId, driver, snapshot).join();
+    }
+
+    private CompletableFuture<Map<String, Object>> propertiesAsync(String driverId, Driver driver, DriverSnapshot snapshot) {
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Loading properties for driver " + driverId + " (" + driver.getClass().getSimpleName() + ")");
+        }
+
+        return snapshot.getProperties().properties(driverId, driver, executor).thenApply(driverProperties -> {
+
+            DriverGuard guard = snapshot.getGuard(driverId);
+            if (guard != null) {
+                driverProperties.put("resilience", guard.stats());
+            }
+
+            DriverHealth health = snapshot.getHealth(driverId);
+            if (health != null) {
+                driverProperties.put("health", health.stats());
+            }
+
+            return driverProperties;
+        });
+    }
+
     public void resolveWithDrivers(String identifier, ResolveResult resolveResult) throws ResolutionException {
+        resolveWithDrivers(identifier, null, resolveResult);
+    }
+
+    public void resolveWithDrivers(String identifier, Map<String, String> options, ResolveResult resolveResult) throws ResolutionException {
+        resolveWithDrivers(identifier, options, resolveResult, ResolutionTiming.disabled());
+    }
+
+    public void resolveWithDrivers(String identifier, Map<String, String> options, ResolveResult resolveResult, ResolutionTiming timing) throws ResolutionException {
+
+        ResolutionOptions resolutionOptions = ResolutionOptions.of(options);
+        ResolveCache cache = drivers.getCache();
+        ResolveResult driverResolveResult = cached(identifier, resolutionOptions, timing);
+
+        if (driverResolveResult == null) {
+            if (singleFlight != null) {
+                driverResolveResult = singleFlight.execute(flightKey(identifier, resolutionOptions, timing), () -> resolveAndCache(identifier, resolutionOptions, timing));
+            } else {
+                driverResolveResult = resolveAndCache(identifier, resolutionOptions, timing);
+            }
+
+            if (cache != null) {
+                driverResolveResult.getDidResolutionMetadata().put("cached", false);
+            }
+        }
+
+        merge(driverResolveResult, resolveResult);
+    }
+
+    public CompletableFuture<ResolveResult> resolveWithDriversAsync(String identifier, Map<String, String> options) {
+        return resolveWithDriversAsync(identifier, options, ResolutionTiming.disabled());
+    }
+
+    public CompletableFuture<ResolveResult> resolveWithDriversAsync(String identifier, Map<String, String> options, ResolutionTiming timing) {
+
+        ResolutionOptions resolutionOptions = ResolutionOptions.of(options);
+        ResolveCache cache = drivers.getCache();
+        ResolveResult cachedResolveResult = cached(identifier, resolutionOptions, timing);
+        if (cachedResolveResult != null) {
+            return CompletableFuture.completedFuture(cachedResolveResult);
+        }
+
+        CompletableFuture<ResolveResult> driverResolveResult;
+
+        if (singleFlight != null) {
+            driverResolveResult = singleFlight.executeAsync(flightKey(identifier, resolutionOptions, timing), () -> resolveAndCacheAsync(identifier, resolutionOptions, timing));
+        } else {
+            driverResolveResult = resolveAndCacheAsync(identifier, resolutionOptions, timing);
+        }
+
+        if (cache == null) {
+            return driverResolveResult;
+        }
+
+        return driverResolveResult.thenApply(result -> {
+            result.getDidResolutionMetadata().put("cached", false);
+            return result;
+        });
+    }
+
+    /*
+     * Helper methods
+     */
+    private static List<Extension> loadExtensions() {
+
+        List<Extension> extensions = new ArrayList<>();
+        for (Extension extension : ServiceLoader.load(Extension.class, LocalUniResolver.class.getClassLoader())) {
+            extensions.add(extension);
+        }
+        return extensions;
+    }
+
+    private DIDURL parseDidUrl(String identifier, ResolveResult resolveResult, ResolutionTiming timing) {
+
+        long start = System.nanoTime();
+        DIDURL didUrl = null;
+
+        try {
+            didUrl = DIDURL.fromString(identifier);
+            resolveResult.getDidResolutionMetadata().put("didUrl", didUrl);
+            LOG.debug("Identifier " + identifier + " is a valid DID URL: " + didUrl);
+        } catch (IllegalArgumentException | ParserException ex) {
+            LOG.debug("Identifier " + identifier + " is not a valid DID URL: " + ex.getMessage());
+        }
+
+        timing.record("parseDidUrl", null, start);
+        return didUrl;
+    }
+
+    private void beforeResolve(String identifier, DIDURL didUrl, Map<String, String> options, ResolveResult resolveResult, ExtensionStatus extensionStatus, ResolutionTiming timing) throws ResolutionException {
+
+        long start = System.nanoTime();
+        try {
+            if (!extensionStatus.skipExtensionsBefore()) {
+                for (Extension extension : this.getExtensions()) {
+                    long extensionStart = System.nanoTime();
+                    extensionStatus.or(extension.beforeResolve(identifier, didUrl, options, resolveResult, this));
+                    timing.record("beforeResolve", extension.getClass().getSimpleName(), extensionStart);
+                    if (extensionStatus.skipExtensionsBefore()) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            metrics.extensionsBefore(start);
+        }
+    }
+
+    private void afterResolve(String identifier, DIDURL didUrl, Map<String, String> options, ResolveResult resolveResult, ExtensionStatus extensionStatus, ResolutionTiming timing) throws ResolutionException {
+
+        long start = System.nanoTime();
+        try {
+            if (!extensionStatus.skipExtensionsAfter()) {
+                for (Extension extension : this.getExtensions()) {
+                    long extensionStart = System.nanoTime();
+                    extensionStatus.or(extension.afterResolve(identifier, didUrl, options, resolveResult, this));
+                    timing.record("afterResolve", extension.getClass().getSimpleName(), extensionStart);
+                    if (extensionStatus.skipExtensionsAfter()) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            metrics.extensionsAfter(start);
+        }
+    }
+
+    private ResolveResult cached(String identifier, ResolutionOptions resolutionOptions, ResolutionTiming timing) {
+
+        ResolveCache cache = drivers.getCache();
+        if (cache == null || resolutionOptions.isNoCache()) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        CacheEntry cacheEntry = cache.get(resolutionOptions.cacheKey(identifier));
+
+        if (cacheEntry != null && resolutionOptions.getMaxAge() >= 0 && cacheEntry.getAge(System.currentTimeMillis()) > resolutionOptions.getMaxAge()) {
+            timing.record("cache", "stale", start);
+            return null;
+        }
+
+        timing.record("cache", cacheEntry != null ? "hit" : "miss", start);
+        if (cacheEntry == null) {
+            return null;
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Resolved " + identifier + " from cache (driver " + cacheEntry.getDriverId() + ")");
+        }
+
+        ResolveResult cachedResolveResult = cacheEntry.getResolveResult();
+        cachedResolveResult.getDidResolutionMetadata().put("cached", true);
+        cachedResolveResult.getDidResolutionMetadata().put("cacheAge", cacheEntry.getAge(System.currentTimeMillis()));
+        return cachedResolveResult;
+    }
+
+    private ResolveResult resolveAndCache(String identifier, ResolutionOptions resolutionOptions, ResolutionTiming timing) throws ResolutionException {
+
+        // the drivers of one resolution come from the same snapshot, also across a reload
+        DriverSnapshot snapshot = drivers.snapshot();
+
+        long start = System.nanoTime();
+        Map<String, Driver> candidates = snapshot.route(identifier);
+        timing.record("driverSelection", null, start);
+
+        ResolveResult driverResolveResult = ResolveResult.build();
+        String usedDriverId = resolveWithDrivers(identifier, driverResolveResult, candidates, snapshot, resolutionOptions, timing);
+
+        ResolveCache cache = snapshot.getCache();
+        if (cache != null) {
+            cache.put(resolutionOptions.cacheKey(identifier), usedDriverId, driverResolveResult);
+        }
+
+        return driverResolveResult;
+    }
+
+    private CompletableFuture<ResolveResult> resolveAndCacheAsync(String identifier, ResolutionOptions resolutionOptions, ResolutionTiming timing) {
+
+        DriverSnapshot snapshot = drivers.snapshot();
+
+        long start = System.nanoTime();
+        Map<String, Driver> candidates = snapshot.route(identifier);
+        timing.record("driverSelection", null, start);
+
+        ResolveResult driverResolveResult = ResolveResult.build();
+
+        CompletableFuture<String> driverId;
+
+        if (snapshot.getRace() != null && candidates.size() > 1) {
+            driverId = raceDrivers(identifier, driverResolveResult, candidates, snapshot, resolutionOptions, timing);
+        } else {
+            driverId = resolveWithDriversAsync(identifier, driverResolveResult, candidates.entrySet().iterator(), null, snapshot, resolutionOptions, timing);
+        }
+
+        return driverId.thenApply(usedDriverId -> {
+
+            resolved(identifier, usedDriverId, driverResolveResult, candidates);
+
+            ResolveCache cache = snapshot.getCache();
+            if (cache != null) {
+                cache.put(resolutionOptions.cacheKey(identifier), usedDriverId, driverResolveResult);
+            }
+
+            return driverResolveResult;
+        });
+    }
+
+    private static void merge(ResolveResult source, ResolveResult target) {
+        target.setDidDocument(source.getDidDocument());
+        target.setDidDocumentMetadata(source.getDidDocumentMetadata());
+        target.getDidResolutionMetadata().putAll(source.getDidResolutionMetadata());
+    }
+
+    private String resolveWithDrivers(String identifier, ResolveResult resolveResult, Map<String, Driver> candidates, DriverSnapshot snapshot, ResolutionOptions resolutionOptions, ResolutionTiming timing) throws ResolutionException {
+
+        if (snapshot.getRace() != null && candidates.size() > 1) {
+            String usedDriverId = await(identifier, raceDrivers(identifier, resolveResult, candidates, snapshot, resolutionOptions, timing));
+            resolved(identifier, usedDriverId, resolveResult, candidates);
+            return usedDriverId;
+        }
 
-        ResolveResult driverResolveResult = null;
         String usedDriverId = null;
+        DriverUnavailableException unavailable = null;
 
-        for (Entry<String, Driver> driver : drivers.getDrivers().entrySet()) {
+        for (Entry<String, Driver> driver : candidates.entrySet()) {
 
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Attemping to resolve " + identifier + " with driver " + driver.getValue().getClass());
             }
-            driverResolveResult = driver.getValue().resolve(identifier);
 
-            if (driverResolveResult != null && driverResolveResult.getDidDocument() != null && driverResolveResult.getDidDocument().getJsonObject().isEmpty()) {
-                driverResolveResult.setDidDocument((DIDDocument) null);
+            ResolveResult driverResolveResult;
+
+            try {
+                driverResolveResult = resolve(driver, identifier, snapshot, resolutionOptions, timing);
+            } catch (DriverUnavailableException ex) {
+                LOG.debug(ex.getMessage());
+                unavailable = ex;
+                continue;
             }
 
-            if (driverResolveResult != null) {
+            if (accept(driverResolveResult, resolveResult)) {
                 usedDriverId = driver.getKey();
-                resolveResult.setDidDocument(driverResolveResult.getDidDocument());
-                resolveResult.setDidDocumentMetadata(driverResolveResult.getDidDocumentMetadata());
                 break;
             }
         }
 
+        // not found is only an answer if every candidate was asked
+        if (usedDriverId == null && unavailable != null) {
+            throw unavailable;
+        }
+
+        resolved(identifier, usedDriverId, resolveResult, candidates);
+        return usedDriverId;
+    }
+
+    private CompletableFuture<String> resolveWithDriversAsync(String identifier, ResolveResult resolveResult, Iterator<Entry<String, Driver>> candidates, DriverUnavailableException unavailable, DriverSnapshot snapshot, ResolutionOptions resolutionOptions, ResolutionTiming timing) {
+
+        if (!candidates.hasNext()) {
+            return unavailable != null ? failed(unavailable) : CompletableFuture.completedFuture(null);
+        }
+
+        Entry<String, Driver> driver = candidates.next();
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Attemping to resolve " + identifier + " asynchronously with driver " + driver.getValue().getClass());
+        }
+
+        return resolveAsync(driver, identifier, snapshot, resolutionOptions, timing).handle((driverResolveResult, ex) -> {
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            if (cause instanceof DriverUnavailableException) {
+                LOG.debug(cause.getMessage());
+                return resolveWithDriversAsync(identifier, resolveResult, candidates, (DriverUnavailableException) cause, snapshot, resolutionOptions, timing);
+            }
+            if (cause != null) {
+                return LocalUniResolver.<String>failed(cause);
+            }
+            if (accept(driverResolveResult, resolveResult)) {
+                return CompletableFuture.completedFuture(driver.getKey());
+            }
+            return resolveWithDriversAsync(identifier, resolveResult, candidates, unavailable, snapshot, resolutionOptions, timing);
+        }).thenCompose(Function.identity());
+    }
+
+    private CompletableFuture<String> raceDrivers(String identifier, ResolveResult resolveResult, Map<String, Driver> candidates, DriverSnapshot snapshot, ResolutionOptions resolutionOptions, ResolutionTiming timing) {
+
+        return snapshot.getRace().race(identifier, candidates, (driver, driverIdentifier) -> resolveAsync(driver, driverIdentifier, snapshot, resolutionOptions, timing)).thenApply(winner -> {
+            if (winner == null) {
+                return null;
+            }
+
+            accept(winner.getResolveResult(), resolveResult);
+            resolveResult.getDidResolutionMetadata().put("raceAttempts", winner.getAttempts());
+            return winner.getDriverId();
+        });
+    }
+
+    private ResolveResult resolve(Entry<String, Driver> driver, String identifier, DriverSnapshot snapshot, ResolutionOptions resolutionOptions, ResolutionTiming timing) throws ResolutionException {
+
+        DriverGuard guard = snapshot.getGuard(driver.getKey());
+
+        long start = System.nanoTime();
+        metrics.driverStarted(driver.getKey());
+
+        ResolveResult resolveResult = null;
+        Throwable failure = null;
+
+        try {
+            resolveResult = guard != null ? guard.resolve(() -> resolve(driver.getValue(), identifier, resolutionOptions, timing)) : resolve(driver.getValue(), identifier, resolutionOptions, timing);
+            return resolveResult;
+        } catch (ResolutionException | RuntimeException ex) {
+            failure = ex;
+            throw ex;
+        } finally {
+            metrics.driverCompleted(driver.getKey(), start, resolveResult, failure);
+            timing.record("driver", driver.getKey(), start);
+        }
+    }
+
+    private CompletableFuture<ResolveResult> resolveAsync(Entry<String, Driver> driver, String identifier, DriverSnapshot snapshot, ResolutionOptions resolutionOptions, ResolutionTiming timing) {
+
+        DriverGuard guard = snapshot.getGuard(driver.getKey());
+
+        long start = System.nanoTime();
+        metrics.driverStarted(driver.getKey());
+
+        CompletableFuture<ResolveResult> resolveResult;
+        try {
+            resolveResult = guard != null ? guard.resolveAsync(() -> resolveAsync(driver.getValue(), identifier, resolutionOptions, timing)) : resolveAsync(driver.getValue(), identifier, resolutionOptions, timing);
+        } catch (RuntimeException ex) {
+            resolveResult = failed(ex);
+        }
+
+        resolveResult.whenComplete((result, ex) -> {
+            metrics.driverCompleted(driver.getKey(), start, result, ex);
+            timing.record("driver", driver.getKey(), start);
+        });
+        return resolveResult;
+    }
+
+    /**
+     * DID method used as metrics tag, limited to the methods of the
+     * configured drivers.
+     */
+    private String metricsMethod(String identifier) {
+
+        String method = drivers.getIndex().indexedMethod(identifier);
+        return method != null ? method : ResolverMetrics.OTHER_METHOD;
+    }
+
+    /**
+     * Key of a driver call shared by concurrent resolutions: the cache key,
+     * kept apart for timed resolutions whose phases are recorded by the call.
+     */
+    private static String flightKey(String identifier, ResolutionOptions resolutionOptions, ResolutionTiming timing) {
+
+        String key = resolutionOptions.cacheKey(identifier);
+        return timing.isEnabled() ? key + "#" + ResolutionTiming.OPTION : key;
+    }
+
+    private static ResolveResult resolve(Driver driver, String identifier, ResolutionOptions resolutionOptions, ResolutionTiming timing) throws ResolutionException {
+
+        if (driver instanceof HttpDriver) {
+            return ((HttpDriver) driver).resolve(identifier, resolutionOptions.getDriverOptions(), timing);
+        }
+
+        return driver.resolve(identifier);
+    }
+
+    private CompletableFuture<ResolveResult> resolveAsync(Driver driver, String identifier, ResolutionOptions resolutionOptions, ResolutionTiming timing) {
+
+        if (driver instanceof HttpDriver) {
+            return ((HttpDriver) driver).resolveAsync(identifier, resolutionOptions.getDriverOptions(), timing);
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return driver.resolve(identifier);
+            } catch (ResolutionException ex) {
+                throw new CompletionException(ex);
+            }
+        }, executor);
+    }
+
+    private static boolean accept(ResolveResult driverResolveResult, ResolveResult resolveResult) {
+
+        if (driverResolveResult == null) {
+            return false;
+        }
+
+        if (driverResolveResult.getDidDocument() != null && driverResolveResult.getDidDocument().getJsonObject().isEmpty()) {
+            driverResolveResult.setDidDocument((DIDDocument) null);
+        }
+
+        resolveResult.setDidDocument(driverResolveResult.getDidDocument());
+        resolveResult.setDidDocumentMetadata(driverResolveResult.getDidDocumentMetadata());
+        return true;
+    }
+
+    private static void resolved(String identifier, String usedDriverId, ResolveResult resolveResult, Map<String, Driver> candidates) {
+
         if (usedDriverId != null) {
             resolveResult.getDidResolutionMetadata().put("driverId", usedDriverId);
             if (LOG.isDebugEnabled()) {
@@ -183,31 +768,69 @@ public class LocalUniResolver implements UniResolver, Serializable {
             }
         } else {
             if (LOG.isDebugEnabled()) {
-                LOG.debug("No result with " + drivers.getDrivers().size() + " drivers.");
+                LOG.debug("No result with " + candidates.size() + " drivers.");
             }
         }
 
         resolveResult.getDidResolutionMetadata().put("identifier", identifier);
     }
 
- 
-    @SuppressWarnings("unchecked")
-    public <T extends Driver> T getDriver(Class<T> driverClass) {
+    private static <T> T await(String identifier, CompletableFuture<T> future) throws ResolutionException {
 
-        for (Driver driver : drivers.getDrivers().values()) {
-            if (driverClass.isAssignableFrom(driver.getClass())) {
-                return (T) driver;
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ResolutionException("Interrupted while resolving " + identifier, ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause() instanceof CompletionException ? ex.getCause().getCause() : ex.getCause();
+            if (cause instanceof ResolutionException) {
+                throw (ResolutionException) cause;
             }
+            throw new ResolutionException(cause.getMessage(), cause);
         }
+    }
 
-        return null;
+    private static <T> CompletableFuture<T> failed(Throwable ex) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(ex);
+        return future;
     }
 
-    public List<Extension> getExtensions() {
-        return this.extensions;
+    /**
+     * First driver of the given type in dispatch order, or null.
+     */
+    public <T extends Driver> T getDriver(Class<T> driverClass) {
+
+        List<T> found = drivers.getRegistry().find(driverClass);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Driver with the given id, enabled or not, if it is of the given type,
+     * or null.
+     */
+    public <T extends Driver> T getDriver(String driverId, Class<T> driverClass) {
+        return drivers.getRegistry().get(driverId, driverClass);
+    }
+
+    public Drivers getDrivers() {
+        return this.drivers;
+    }
+
+    public ResolveCache getCache() {
+        return this.drivers.getCache();
+    }
+
+    public SingleFlight getSingleFlight() {
+        return this.singleFlight;
     }
 
-    public void setExtensions(List<Extension> extensions) {
-        this.extensions = extensions;
+    public Executor getExecutor() {
+        return this.executor;
+    }
+
+    public List<Extension> getExtensions() {
+        return this.extensions;
     }
 }
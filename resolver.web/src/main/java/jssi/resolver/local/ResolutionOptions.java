@@ -0,0 +1,136 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The resolution options seen by the drivers and the cache. Only the driver
+ * options ("accept" and the version parameters) change what a driver returns,
+ * so only they are part of the cache key; the other options reach the
+ * extensions alone. "no-cache" skips the cached result and "max-age" (seconds)
+ * bounds the age of the cached result, in both cases the fresh result is
+ * cached as usual.
+ *
+ * @author UBICUA
+ */
+public final class ResolutionOptions {
+
+    public static final String ACCEPT = "accept";
+    public static final String VERSION_ID = "versionId";
+    public static final String VERSION_TIME = "versionTime";
+    public static final String NO_CACHE = "no-cache";
+    public static final String MAX_AGE = "max-age";
+
+    public static final List<String> DRIVER_OPTIONS = Collections.unmodifiableList(Arrays.asList(ACCEPT, VERSION_ID, VERSION_TIME));
+
+    private static final ResolutionOptions NONE = new ResolutionOptions(Collections.emptyMap(), false, -1L);
+
+    private final Map<String, String> driverOptions;
+    private final boolean noCache;
+    private final long maxAge;
+
+    private ResolutionOptions(Map<String, String> driverOptions, boolean noCache, long maxAge) {
+        this.driverOptions = Collections.unmodifiableMap(driverOptions);
+        this.noCache = noCache;
+        this.maxAge = maxAge;
+    }
+
+    public static ResolutionOptions none() {
+        return NONE;
+    }
+
+    /**
+     * The options of a resolution. A "no-cache" option without value counts
+     * as true, a "max-age" that is not a non negative number is ignored.
+     */
+    public static ResolutionOptions of(Map<String, String> options) {
+
+        if (options == null || options.isEmpty()) {
+            return NONE;
+        }
+
+        Map<String, String> driverOptions = new TreeMap<>();
+        for (String name : DRIVER_OPTIONS) {
+            String value = options.get(name);
+            if (value != null && !value.isEmpty()) {
+                driverOptions.put(name, value);
+            }
+        }
+
+        String noCache = options.get(NO_CACHE);
+
+        return new ResolutionOptions(driverOptions, noCache != null && !"false".equalsIgnoreCase(noCache), maxAge(options.get(MAX_AGE)));
+    }
+
+    /**
+     * Options passed on to the drivers, sorted by name.
+     */
+    public Map<String, String> getDriverOptions() {
+        return driverOptions;
+    }
+
+    public boolean isNoCache() {
+        return noCache;
+    }
+
+    /**
+     * Largest accepted age of a cached result (milliseconds), or -1 if any
+     * live result is accepted.
+     */
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Cache key of the identifier resolved with these options.
+     */
+    public String cacheKey(String identifier) {
+        return SingleFlight.key(identifier, driverOptions);
+    }
+
+    /**
+     * Identifier of a cache key.
+     */
+    public static String identifier(String cacheKey) {
+
+        int options = cacheKey.indexOf('?');
+        return options < 0 ? cacheKey : cacheKey.substring(0, options);
+    }
+
+    /*
+     * Helper methods
+     */
+    private static long maxAge(String value) {
+
+        if (value == null) {
+            return -1L;
+        }
+
+        try {
+            long seconds = Long.parseLong(value.trim());
+            return seconds < 0 ? -1L : seconds * 1000;
+        } catch (NumberFormatException ex) {
+            return -1L;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Phases of one resolution in nanoseconds, collected when the "timing" option
+ * is set. Phases may be recorded from several threads, for instance by the
+ * attempts of a driver race. The disabled instance ignores every phase, so the
+ * callers do not need to check whether timing was requested.
+ *
+ * @author UBICUA
+ */
+public class ResolutionTiming {
+
+    public static final String OPTION = "timing";
+
+    private static final ResolutionTiming DISABLED = new ResolutionTiming(false);
+
+    private final boolean enabled;
+    private final long origin;
+    private final Queue<Phase> phases = new ConcurrentLinkedQueue<>();
+
+    public ResolutionTiming() {
+        this(true);
+    }
+
+    private ResolutionTiming(boolean enabled) {
+        this.enabled = enabled;
+        this.origin = System.nanoTime();
+    }
+
+    public static ResolutionTiming disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * A new timing if the options request it, the disabled one otherwise.
+     */
+    public static ResolutionTiming of(Map<String, String> options) {
+        return options != null && Boolean.parseBoolean(options.get(OPTION)) ? new ResolutionTiming() : DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records a phase started at the given System.nanoTime() and ending now.
+     */
+    public void record(String phase, String name, long start) {
+
+        if (enabled) {
+            phases.add(new Phase(phase, name, start, System.nanoTime()));
+        }
+    }
+
+    /**
+     * The phases ordered by start, with their offset from the start of the
+     * resolution and their duration.
+     */
+    public Map<String, Object> toMap() {
+
+        List<Phase> sorted = new ArrayList<>(phases);
+        sorted.sort(Comparator.comparingLong(phase -> phase.start));
+
+        List<Map<String, Object>> phaseList = new ArrayList<>(sorted.size());
+        for (Phase phase : sorted) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("phase", phase.phase);
+            if (phase.name != null) {
+                entry.put("name", phase.name);
+            }
+            entry.put("offset", phase.start - origin);
+            entry.put("duration", phase.end - phase.start);
+            phaseList.add(entry);
+        }
+
+        Map<String, Object> timing = new LinkedHashMap<>();
+        timing.put("unit", "ns");
+        timing.put("total", System.nanoTime() - origin);
+        timing.put("phases", phaseList);
+        return timing;
+    }
+
+    private static class Phase {
+
+        private final String phase;
+        private final String name;
+        private final long start;
+        private final long end;
+
+        private Phase(String phase, String name, long start, long end) {
+            this.phase = phase;
+            this.name = name;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
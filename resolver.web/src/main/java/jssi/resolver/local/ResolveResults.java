@@ -0,0 +1,56 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import uniresolver.result.ResolveResult;
+
+/**
+ * Copies of resolution results handed to several callers. ResolveResult.copy()
+ * shares the metadata maps with the original, here each copy gets maps of its
+ * own, so that a caller adding resolution metadata does not write into the
+ * maps of the others.
+ *
+ * @author UBICUA
+ */
+public final class ResolveResults {
+
+    private ResolveResults() {
+    }
+
+    /**
+     * Copy of the result with its own metadata maps, or null.
+     */
+    public static ResolveResult copy(ResolveResult resolveResult) {
+
+        if (resolveResult == null) {
+            return null;
+        }
+
+        return ResolveResult.build(resolveResult.getDidDocument(), resolveResult.getContent(), resolveResult.getContentType(),
+                copy(resolveResult.getDidResolutionMetadata()), copy(resolveResult.getDidDocumentMetadata()));
+    }
+
+    /*
+     * Helper methods
+     */
+    private static Map<String, Object> copy(Map<String, Object> metadata) {
+        return metadata == null ? new LinkedHashMap<>() : new LinkedHashMap<>(metadata);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+import javax.enterprise.context.ApplicationScoped;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uniresolver.ResolutionException;
+import uniresolver.result.ResolveResult;
+
+/**
+ * Coalesces concurrent resolutions of the same key into a single driver call.
+ * Every caller, including the one that executed the resolution, receives its
+ * own copy of the shared result.
+ *
+ * @author UBICUA
+ */
+@ApplicationScoped
+public class SingleFlight {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SingleFlight.class);
+
+    private final ConcurrentMap<String, CompletableFuture<ResolveResult>> flights = new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    public interface Resolution {
+
+        public ResolveResult resolve() throws ResolutionException;
+    }
+
+    /**
+     * Runs the resolution on the calling thread unless one for the same key is
+     * already in flight.
+     */
+    public ResolveResult execute(String key, Resolution resolution) throws ResolutionException {
+
+        return await(key, executeAsync(key, () -> {
+            CompletableFuture<ResolveResult> resolveResult = new CompletableFuture<>();
+            try {
+                resolveResult.complete(resolution.resolve());
+            } catch (ResolutionException | RuntimeException ex) {
+                resolveResult.completeExceptionally(ex);
+            }
+            return resolveResult;
+        }));
+    }
+
+    public CompletableFuture<ResolveResult> executeAsync(String key, Supplier<CompletableFuture<ResolveResult>> resolution) {
+
+        CompletableFuture<ResolveResult> flight = new CompletableFuture<>();
+        CompletableFuture<ResolveResult> existing = flights.putIfAbsent(key, flight);
+
+        if (existing != null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Waiting for in-flight resolution of " + key);
+            }
+            return existing.thenApply(ResolveResults::copy);
+        }
+
+        CompletableFuture<ResolveResult> resolveResult;
+        try {
+            resolveResult = resolution.get();
+        } catch (RuntimeException ex) {
+            resolveResult = new CompletableFuture<>();
+            resolveResult.completeExceptionally(ex);
+        }
+
+        resolveResult.whenComplete((result, ex) -> {
+            flights.remove(key, flight);
+            if (ex != null) {
+                flight.completeExceptionally(ex);
+            } else {
+                flight.complete(result);
+            }
+        });
+
+        return flight.thenApply(ResolveResults::copy);
+    }
+
+    public int size() {
+        return flights.size();
+    }
+
+    /**
+     * Key of a resolution: the normalized identifier followed by the sorted
+     * options, if any.
+     */
+    public static String key(String identifier, Map<String, String> options) {
+
+        if (options == null || options.isEmpty()) {
+            return identifier;
+        }
+
+        StringBuilder key = new StringBuilder(identifier);
+        char separator = '?';
+        for (Map.Entry<String, String> option : new TreeMap<>(options).entrySet()) {
+            key.append(separator).append(option.getKey()).append('=').append(option.getValue());
+            separator = '&';
+        }
+        return key.toString();
+    }
+
+    private static ResolveResult await(String key, CompletableFuture<ResolveResult> flight) throws ResolutionException {
+
+        try {
+            return flight.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ResolutionException("Interrupted while waiting for resolution of " + key, ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause() instanceof CompletionException ? ex.getCause().getCause() : ex.getCause();
+            if (cause instanceof ResolutionException) {
+                throw (ResolutionException) cause;
+            }
+            throw new ResolutionException(cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local.cache;
+
+import jssi.resolver.local.ResolveResults;
+import uniresolver.result.ResolveResult;
+
+/**
+ *
+ * @author UBICUA
+ */
+public class CacheEntry {
+
+    private final ResolveResult resolveResult;
+    private final String driverId;
+    private final long created;
+    private final long expires;
+    private final long size;
+
+    /**
+     * The entry keeps a copy of the result, the caller may go on changing it.
+     */
+    public CacheEntry(ResolveResult resolveResult, String driverId, long created, long expires, long size) {
+        this.resolveResult = ResolveResults.copy(resolveResult);
+        this.driverId = driverId;
+        this.created = created;
+        this.expires = expires;
+        this.size = size;
+    }
+
+    public boolean isNegative() {
+        return driverId == null || resolveResult.getDidDocument() == null;
+    }
+
+    public boolean isExpired(long now) {
+        return now >= expires;
+    }
+
+    public long getAge(long now) {
+        return now - created;
+    }
+
+    /**
+     * Copy of the cached result with its own metadata maps, which the caller
+     * may change without affecting the entry or concurrent hits.
+     */
+    public ResolveResult getResolveResult() {
+        return ResolveResults.copy(resolveResult);
+    }
+
+    public String getDriverId() {
+        return driverId;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getExpires() {
+        return expires;
+    }
+
+    public long getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local.cache;
+
+import did.DIDDocument;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uniresolver.result.ResolveResult;
+
+/**
+ * In-memory resolve cache bounded by number of entries and estimated bytes.
+ * Entries are evicted in LRU order, or approximately LFU by sampling the
+ * oldest entries when the LFU policy is selected. The size of an entry is
+ * estimated from the structure of the result, without serializing it, and
+ * only when the cache has a byte limit.
+ *
+ * @author UBICUA
+ */
+public class MemoryResolveCache implements ResolveCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MemoryResolveCache.class);
+
+    public enum Eviction {
+        LRU, LFU
+    }
+
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_TTL = 300000L;
+    public static final long DEFAULT_NEGATIVE_TTL = 30000L;
+
+    private static final int LFU_SAMPLES = 16;
+    private static final long VALUE_SIZE = 8L;
+
+    private final Eviction eviction;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttl;
+    private final long negativeTtl;
+    private final Map<String, Long> driverTtls = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+
+    private final LinkedHashMap<String, Node> entries;
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public MemoryResolveCache() {
+        this(Eviction.LRU, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES, DEFAULT_TTL, DEFAULT_NEGATIVE_TTL);
+    }
+
+    /**
+     * @param eviction eviction policy
+     * @param maxEntries largest number of entries
+     * @param maxBytes largest estimated size of the entries, 0 for no limit
+     * @param ttl time to live of the results (milliseconds)
+     * @param negativeTtl time to live of the "not found" results (milliseconds)
+     */
+    public MemoryResolveCache(Eviction eviction, int maxEntries, long maxBytes, long ttl, long negativeTtl) {
+        this(eviction, maxEntries, maxBytes, ttl, negativeTtl, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock current time (milliseconds)
+     */
+    MemoryResolveCache(Eviction eviction, int maxEntries, long maxBytes, long ttl, long negativeTtl, LongSupplier clock) {
+        this.eviction = eviction;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, eviction == Eviction.LRU);
+    }
+
+    @Override
+    public synchronized CacheEntry get(String key) {
+
+        Node node = entries.get(key);
+
+        if (node == null) {
+            misses++;
+            return null;
+        }
+
+        if (node.entry.isExpired(clock.getAsLong())) {
+            remove(key);
+            misses++;
+            return null;
+        }
+
+        node.hits++;
+        hits++;
+        return node.entry;
+    }
+
+    @Override
+    public void put(String key, String driverId, ResolveResult resolveResult) {
+
+        boolean negative = driverId == null || resolveResult.getDidDocument() == null;
+        long entryTtl = negative ? negativeTtl : getTtl(driverId);
+
+        if (entryTtl <= 0 || maxEntries <= 0) {
+            return;
+        }
+
+        long size = maxBytes > 0 ? estimateSize(resolveResult) : 0L;
+        if (maxBytes > 0 && size > maxBytes) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Not caching " + key + ": " + size + " bytes exceeds cache size");
+            }
+            return;
+        }
+
+        long now = clock.getAsLong();
+        CacheEntry entry = new CacheEntry(resolveResult, driverId, now, now + entryTtl, size);
+
+        synchronized (this) {
+            remove(key);
+
+            // make room first, the new entry has no hits yet and would be the LFU victim
+            while (!entries.isEmpty() && (entries.size() >= maxEntries || (maxBytes > 0 && bytes + size > maxBytes))) {
+                evict();
+            }
+
+            entries.put(key, new Node(entry));
+            bytes += size;
+        }
+    }
+
+    @Override
+    public synchronized void invalidate(String key) {
+        remove(key);
+    }
+
+    @Override
+    public synchronized int invalidateIf(Predicate<String> key) {
+
+        int removed = 0;
+        for (Iterator<Map.Entry<String, Node>> iterator = entries.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry<String, Node> entry = iterator.next();
+            if (key.test(entry.getKey())) {
+                iterator.remove();
+                bytes -= entry.getValue().entry.getSize();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    @Override
+    public synchronized List<String> keys() {
+
+        long now = clock.getAsLong();
+        List<String> keys = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Node> entry : entries.entrySet()) {
+            if (!entry.getValue().entry.isExpired(now)) {
+                keys.add(entry.getKey());
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public long getTtl(String driverId) {
+        Long driverTtl = driverId == null ? null : driverTtls.get(driverId);
+        return driverTtl != null ? driverTtl : ttl;
+    }
+
+    public void setTtl(String driverId, long driverTtl) {
+        driverTtls.put(driverId, driverTtl);
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Estimated size of the cached results.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public synchronized Map<String, Object> stats() {
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("eviction", eviction.name());
+        stats.put("entries", entries.size());
+        stats.put("bytes", bytes);
+        stats.put("maxEntries", maxEntries);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+
+    /*
+     * Helper methods
+     */
+    private void remove(String key) {
+        Node node = entries.remove(key);
+        if (node != null) {
+            bytes -= node.entry.getSize();
+        }
+    }
+
+    private void evict() {
+
+        Iterator<Map.Entry<String, Node>> iterator = entries.entrySet().iterator();
+        String victim = null;
+
+        if (eviction == Eviction.LRU) {
+            victim = iterator.next().getKey();
+        } else {
+            int minHits = Integer.MAX_VALUE;
+            for (int i = 0; i < LFU_SAMPLES && iterator.hasNext(); i++) {
+                Map.Entry<String, Node> candidate = iterator.next();
+                if (candidate.getValue().hits < minHits) {
+                    minHits = candidate.getValue().hits;
+                    victim = candidate.getKey();
+                }
+            }
+        }
+
+        remove(victim);
+        evictions++;
+    }
+
+    /**
+     * Approximate length of the result as JSON: the lengths of the strings
+     * and keys, a fixed size for the other values.
+     */
+    static long estimateSize(ResolveResult resolveResult) {
+        return estimateSize(resolveResult.getDidDocument())
+                + estimateSize(resolveResult.getContent())
+                + estimateSize(resolveResult.getContentType())
+                + estimateSize(resolveResult.getDidResolutionMetadata())
+                + estimateSize(resolveResult.getDidDocumentMetadata());
+    }
+
+    private static long estimateSize(Object value) {
+
+        if (value instanceof CharSequence) {
+            return ((CharSequence) value).length() + 2L;
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        if (value instanceof DIDDocument) {
+            return estimateSize(((DIDDocument) value).getJsonObject());
+        }
+        if (value instanceof ResolveResult) {
+            return estimateSize((ResolveResult) value);
+        }
+        if (value instanceof Map) {
+            long size = 2L;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += String.valueOf(entry.getKey()).length() + 4L + estimateSize(entry.getValue());
+            }
+            return size;
+        }
+        if (value instanceof Collection) {
+            long size = 2L;
+            for (Object item : (Collection<?>) value) {
+                size += estimateSize(item) + 1L;
+            }
+            return size;
+        }
+        return VALUE_SIZE;
+    }
+
+    private static class Node {
+
+        private final CacheEntry entry;
+        private int hits = 0;
+
+        private Node(CacheEntry entry) {
+            this.entry = entry;
+        }
+    }
+}
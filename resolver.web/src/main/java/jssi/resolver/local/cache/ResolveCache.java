@@ -0,0 +1,64 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local.cache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import uniresolver.result.ResolveResult;
+
+/**
+ * Cache of driver resolution results consulted by the LocalUniResolver before
+ * any driver is called.
+ *
+ * @author UBICUA
+ */
+public interface ResolveCache {
+
+    /**
+     * Returns the live entry for the key or null if absent or expired.
+     */
+    public CacheEntry get(String key);
+
+    /**
+     * Stores the result resolved by the given driver. A null driver id or a
+     * result without DID document is stored as a negative ("not found") entry.
+     */
+    public void put(String key, String driverId, ResolveResult resolveResult);
+
+    public void invalidate(String key);
+
+    /**
+     * Removes the entries whose key matches and returns how many were removed.
+     */
+    public int invalidateIf(Predicate<String> key);
+
+    public void clear();
+
+    /**
+     * Keys of the live entries.
+     */
+    public List<String> keys();
+
+    /**
+     * Time to live in milliseconds for results of the given driver.
+     */
+    public long getTtl(String driverId);
+
+    public Map<String, Object> stats();
+}
@@ -0,0 +1,161 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local.health;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Outcome of the last health probes of a driver. The driver is unhealthy
+ * after a number of consecutive failed probes and healthy again after the
+ * first successful one. Availability and latency are computed over the
+ * probes in the sliding window.
+ *
+ * @author UBICUA
+ */
+public class DriverHealth {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DriverHealth.class);
+
+    public static final int DEFAULT_WINDOW_SIZE = 10;
+    public static final int DEFAULT_UNHEALTHY_AFTER = 3;
+
+    private final String name;
+    private final int windowSize;
+    private final int unhealthyAfter;
+
+    private final boolean[] failures;
+    private final long[] latencies;
+    private int position = 0;
+    private int probes = 0;
+    private int consecutiveFailures = 0;
+    private long lastProbe = 0L;
+    private String lastError = null;
+
+    public DriverHealth(String name) {
+        this(name, DEFAULT_WINDOW_SIZE, DEFAULT_UNHEALTHY_AFTER);
+    }
+
+    /**
+     * @param name driver id, for logging
+     * @param windowSize number of probes in the sliding window
+     * @param unhealthyAfter consecutive failed probes making the driver
+     * unhealthy
+     */
+    public DriverHealth(String name, int windowSize, int unhealthyAfter) {
+
+        if (windowSize < 1 || unhealthyAfter < 1) {
+            throw new IllegalArgumentException("Health window and unhealthy threshold must be positive");
+        }
+
+        this.name = name;
+        this.windowSize = windowSize;
+        this.unhealthyAfter = unhealthyAfter;
+        this.failures = new boolean[windowSize];
+        this.latencies = new long[windowSize];
+    }
+
+    public synchronized void onSuccess(long latency) {
+
+        if (consecutiveFailures >= unhealthyAfter && LOG.isInfoEnabled()) {
+            LOG.info(String.format("Driver %s is healthy again (latency %d ms)", name, latency));
+        }
+
+        record(false, latency);
+        consecutiveFailures = 0;
+        lastError = null;
+    }
+
+    public synchronized void onFailure(long latency, String error) {
+
+        record(true, latency);
+        lastError = error;
+
+        if (++consecutiveFailures == unhealthyAfter && LOG.isWarnEnabled()) {
+            LOG.warn(String.format("Driver %s is unhealthy after %d failed probes: %s", name, consecutiveFailures, error));
+        }
+    }
+
+    /**
+     * True until the driver fails "unhealthyAfter" probes in a row.
+     */
+    public synchronized boolean isHealthy() {
+        return consecutiveFailures < unhealthyAfter;
+    }
+
+    /**
+     * Successful probes in the window, 1.0 before the first probe.
+     */
+    public synchronized double getAvailability() {
+
+        if (probes == 0) {
+            return 1.0;
+        }
+
+        int failed = 0;
+        for (int i = 0; i < probes; i++) {
+            failed += failures[i] ? 1 : 0;
+        }
+        return (double) (probes - failed) / probes;
+    }
+
+    /**
+     * Mean latency of the successful probes in the window (milliseconds), or
+     * -1 if none.
+     */
+    public synchronized long getLatency() {
+
+        long total = 0L;
+        int count = 0;
+        for (int i = 0; i < probes; i++) {
+            if (!failures[i]) {
+                total += latencies[i];
+                count++;
+            }
+        }
+        return count == 0 ? -1L : total / count;
+    }
+
+    public synchronized Map<String, Object> stats() {
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("healthy", isHealthy());
+        stats.put("probes", probes);
+        stats.put("availability", getAvailability());
+        stats.put("latency", getLatency());
+        stats.put("lastProbe", lastProbe);
+        if (lastError != null) {
+            stats.put("lastError", lastError);
+        }
+        return stats;
+    }
+
+    /*
+     * Helper methods
+     */
+    private void record(boolean failure, long latency) {
+
+        failures[position] = failure;
+        latencies[position] = latency;
+        position = (position + 1) % windowSize;
+        probes = Math.min(probes + 1, windowSize);
+        lastProbe = System.currentTimeMillis();
+    }
+}
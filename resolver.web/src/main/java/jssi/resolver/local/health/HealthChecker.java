@@ -0,0 +1,275 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local.health;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import jssi.resolver.driver.http.HttpDriver;
+import jssi.resolver.local.cache.ResolveCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uniresolver.driver.Driver;
+import uniresolver.result.ResolveResult;
+
+/**
+ * Periodically resolves the test identifiers of each HTTP driver and keeps
+ * the health of the drivers. The first round runs at start up and, when
+ * warming is enabled, stores the results in the resolve cache; it also opens
+ * the pooled connections to every driver. The candidates of an identifier
+ * are routed around unhealthy drivers and, with latency routing, ordered
+ * from the fastest driver. Drivers registered after start up are probed from
+ * their registration on.
+ *
+ * @author UBICUA
+ */
+public class HealthChecker implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HealthChecker.class);
+
+    public static final long DEFAULT_INTERVAL = 60000L;
+    public static final long DEFAULT_TIMEOUT = 5000L;
+
+    public enum Routing {
+        CONFIGURED, LATENCY
+    }
+
+    private final Map<String, Driver> drivers = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> testIdentifiers = new ConcurrentHashMap<>();
+    private final Map<String, DriverHealth> health = new ConcurrentHashMap<>();
+    private final ResolveCache cache;
+    private final long interval;
+    private final long timeout;
+    private final Routing routing;
+    private final int windowSize;
+    private final int unhealthyAfter;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param drivers configured drivers
+     * @param testIdentifiers test identifiers of each driver
+     * @param cache resolve cache to warm, or null
+     * @param interval time between probe rounds (milliseconds)
+     * @param timeout time after which a probe fails (milliseconds)
+     * @param routing ordering of the healthy candidates
+     * @param windowSize number of probes in the health window of a driver
+     * @param unhealthyAfter consecutive failed probes making a driver unhealthy
+     */
+    public HealthChecker(Map<String, Driver> drivers, Map<String, List<String>> testIdentifiers, ResolveCache cache, long interval, long timeout, Routing routing, int windowSize, int unhealthyAfter) {
+        this.cache = cache;
+        this.interval = interval;
+        this.timeout = timeout;
+        this.routing = routing;
+        this.windowSize = windowSize;
+        this.unhealthyAfter = unhealthyAfter;
+        for (Map.Entry<String, List<String>> tests : testIdentifiers.entrySet()) {
+            Driver driver = drivers.get(tests.getKey());
+            if (driver != null && !tests.getValue().isEmpty()) {
+                this.drivers.put(tests.getKey(), driver);
+                this.testIdentifiers.put(tests.getKey(), Collections.unmodifiableList(new ArrayList<>(tests.getValue())));
+                this.health.put(tests.getKey(), new DriverHealth(tests.getKey(), windowSize, unhealthyAfter));
+            }
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "driver-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs the first probe round now and the next ones every interval.
+     */
+    public void start(boolean warm) {
+
+        scheduler.execute(() -> probe(warm));
+        scheduler.scheduleWithFixedDelay(() -> probe(false), interval, interval, TimeUnit.MILLISECONDS);
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Probing " + health.size() + " drivers every " + interval + " ms (" + routing + " routing, warm " + warm + ")");
+        }
+    }
+
+    /**
+     * The candidates without the unhealthy drivers, in configured order or
+     * from the fastest. If no candidate is healthy they are returned as they
+     * are, so that an identifier is never left without drivers.
+     */
+    public Map<String, Driver> route(Map<String, Driver> candidates) {
+
+        if (candidates.size() < 2) {
+            return candidates;
+        }
+
+        List<Map.Entry<String, Driver>> healthy = new ArrayList<>(candidates.size());
+        for (Map.Entry<String, Driver> candidate : candidates.entrySet()) {
+            DriverHealth driverHealth = health.get(candidate.getKey());
+            if (driverHealth == null || driverHealth.isHealthy()) {
+                healthy.add(candidate);
+            }
+        }
+
+        if (healthy.isEmpty() || (healthy.size() == candidates.size() && routing == Routing.CONFIGURED)) {
+            return candidates;
+        }
+
+        if (routing == Routing.LATENCY) {
+            // stable sort, drivers without latency keep their place after the measured ones
+            healthy.sort(Comparator.comparingLong(candidate -> latency(candidate.getKey())));
+        }
+
+        Map<String, Driver> routed = new LinkedHashMap<>();
+        for (Map.Entry<String, Driver> candidate : healthy) {
+            routed.put(candidate.getKey(), candidate.getValue());
+        }
+        return routed;
+    }
+
+    /**
+     * Probes a driver registered after start up, now and every interval. The
+     * driver starts healthy; without test identifiers it is not probed.
+     */
+    public void register(String driverId, Driver driver, List<String> identifiers) {
+
+        if (identifiers == null || identifiers.isEmpty()) {
+            unregister(driverId);
+            return;
+        }
+
+        DriverHealth driverHealth = new DriverHealth(driverId, windowSize, unhealthyAfter);
+        drivers.put(driverId, driver);
+        testIdentifiers.put(driverId, Collections.unmodifiableList(new ArrayList<>(identifiers)));
+        health.put(driverId, driverHealth);
+
+        if (driver instanceof HttpDriver && !scheduler.isShutdown()) {
+            scheduler.execute(() -> {
+                for (String identifier : identifiers) {
+                    probe(driverId, (HttpDriver) driver, identifier, driverHealth, false);
+                }
+            });
+        }
+    }
+
+    public void unregister(String driverId) {
+        health.remove(driverId);
+        testIdentifiers.remove(driverId);
+        drivers.remove(driverId);
+    }
+
+    /**
+     * Health of the driver, or null if it has no test identifiers.
+     */
+    public DriverHealth getHealth(String driverId) {
+        return health.get(driverId);
+    }
+
+    public Routing getRouting() {
+        return routing;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /*
+     * Helper methods
+     */
+    private void probe(boolean warm) {
+
+        for (Map.Entry<String, DriverHealth> driverHealth : health.entrySet()) {
+            Driver driver = drivers.get(driverHealth.getKey());
+            if (!(driver instanceof HttpDriver)) {
+                continue;
+            }
+            for (String identifier : testIdentifiers.getOrDefault(driverHealth.getKey(), Collections.emptyList())) {
+                probe(driverHealth.getKey(), (HttpDriver) driver, identifier, driverHealth.getValue(), warm);
+            }
+        }
+    }
+
+    private void probe(String driverId, HttpDriver driver, String identifier, DriverHealth driverHealth, boolean warm) {
+
+        long start = System.currentTimeMillis();
+        CompletableFuture<ResolveResult> resolveResult;
+
+        try {
+            resolveResult = driver.resolveAsync(identifier);
+        } catch (RuntimeException ex) {
+            driverHealth.onFailure(0L, ex.getMessage());
+            return;
+        }
+
+        // cancelling aborts the HTTP request
+        ScheduledFuture<?> deadline = scheduler.schedule(() -> resolveResult.cancel(true), timeout, TimeUnit.MILLISECONDS);
+
+        resolveResult.whenComplete((result, ex) -> {
+
+            deadline.cancel(false);
+            long latency = System.currentTimeMillis() - start;
+
+            if (ex != null) {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                String error = cause instanceof CancellationException ? "Timeout after " + timeout + " ms" : cause.getMessage();
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Probe of driver " + driverId + " with " + identifier + " failed: " + error);
+                }
+                driverHealth.onFailure(latency, error);
+                return;
+            }
+
+            // a test identifier must resolve, an answer without document is a failure
+            if (result == null || result.getDidDocument() == null) {
+                Object error = result != null && result.getDidResolutionMetadata() != null ? result.getDidResolutionMetadata().get("error") : null;
+                String message = "No DID document for " + identifier + (error != null ? ": " + error : "");
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Probe of driver " + driverId + " failed: " + message);
+                }
+                driverHealth.onFailure(latency, message);
+                return;
+            }
+
+            driverHealth.onSuccess(latency);
+
+            if (warm && cache != null) {
+                result.getDidResolutionMetadata().put("driverId", driverId);
+                result.getDidResolutionMetadata().put("identifier", identifier);
+                cache.put(identifier, driverId, result);
+            }
+        });
+    }
+
+    private long latency(String driverId) {
+
+        DriverHealth driverHealth = health.get(driverId);
+        long latency = driverHealth == null ? -1L : driverHealth.getLatency();
+        return latency < 0 ? Long.MAX_VALUE : latency;
+    }
+}
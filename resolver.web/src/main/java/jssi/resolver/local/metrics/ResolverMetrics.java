@@ -0,0 +1,228 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import javax.enterprise.context.ApplicationScoped;
+import jssi.resolver.local.cache.MemoryResolveCache;
+import jssi.resolver.local.cache.ResolveCache;
+import jssi.resolver.local.resilience.DriverUnavailableException;
+import uniresolver.result.ResolveResult;
+
+/**
+ * Prometheus registry of the resolver: latency histograms and result counters
+ * per driver and per DID method, resolutions and driver calls in flight,
+ * timers of the extension phases and of the JSON serialization, and the hits,
+ * misses, evictions and size of the resolve cache.
+ *
+ * @author UBICUA
+ */
+@ApplicationScoped
+public class ResolverMetrics {
+
+    public static final String OTHER_METHOD = "other";
+
+    public enum Result {
+        FOUND, NOT_FOUND, ERROR, TIMEOUT, UNAVAILABLE, CANCELLED;
+
+        public String tag() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ConcurrentMap<String, AtomicInteger> driversInFlight = new ConcurrentHashMap<>();
+    private final Timer extensionsBefore;
+    private final Timer extensionsAfter;
+    private final Timer serialization;
+    private volatile Supplier<ResolveCache> cache = () -> null;
+
+    public ResolverMetrics() {
+
+        registry.gauge("resolver.resolutions.inflight", inFlight);
+
+        extensionsBefore = Timer.builder("resolver.extensions.duration")
+                .tag("phase", "before")
+                .register(registry);
+        extensionsAfter = Timer.builder("resolver.extensions.duration")
+                .tag("phase", "after")
+                .register(registry);
+        serialization = Timer.builder("resolver.serialization.duration")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public void resolutionStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * Records a resolution started at "start" (System.nanoTime).
+     * @param method DID method, or OTHER_METHOD for methods without drivers
+     */
+    public void resolutionCompleted(String method, long start, ResolveResult resolveResult, Throwable ex) {
+
+        inFlight.decrementAndGet();
+
+        String result = result(resolveResult, ex).tag();
+        long duration = System.nanoTime() - start;
+
+        Timer.builder("resolver.resolve.duration")
+                .tag("method", method)
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(duration, TimeUnit.NANOSECONDS);
+        Counter.builder("resolver.resolve.results")
+                .tag("method", method)
+                .tag("result", result)
+                .register(registry)
+                .increment();
+    }
+
+    public void driverStarted(String driverId) {
+        driverInFlight(driverId).incrementAndGet();
+    }
+
+    public void driverCompleted(String driverId, long start, ResolveResult resolveResult, Throwable ex) {
+
+        driverInFlight(driverId).decrementAndGet();
+
+        String result = result(resolveResult, ex).tag();
+        long duration = System.nanoTime() - start;
+
+        Timer.builder("resolver.driver.duration")
+                .tag("driver", driverId)
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(duration, TimeUnit.NANOSECONDS);
+        Counter.builder("resolver.driver.results")
+                .tag("driver", driverId)
+                .tag("result", result)
+                .register(registry)
+                .increment();
+    }
+
+    public void extensionsBefore(long start) {
+        extensionsBefore.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    public void extensionsAfter(long start) {
+        extensionsAfter.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    public void serialization(long start) {
+        serialization.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Registers the meters of the resolve cache. The cache is looked up on
+     * every scrape since a reload may replace it; the counters of a new cache
+     * start over, which Prometheus counts as a reset.
+     * @param cache current resolve cache, or null if none
+     */
+    public void cache(Supplier<ResolveCache> cache) {
+
+        this.cache = cache;
+
+        FunctionCounter.builder("resolver.cache.hits", this, metrics -> metrics.cacheStat(MemoryResolveCache::getHits))
+                .register(registry);
+        FunctionCounter.builder("resolver.cache.misses", this, metrics -> metrics.cacheStat(MemoryResolveCache::getMisses))
+                .register(registry);
+        FunctionCounter.builder("resolver.cache.evictions", this, metrics -> metrics.cacheStat(MemoryResolveCache::getEvictions))
+                .register(registry);
+        Gauge.builder("resolver.cache.entries", this, metrics -> metrics.cacheStat(MemoryResolveCache::size))
+                .register(registry);
+        Gauge.builder("resolver.cache.bytes", this, metrics -> metrics.cacheStat(MemoryResolveCache::getBytes))
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * Prometheus text exposition of all the meters.
+     */
+    public String scrape() {
+        return registry.scrape();
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    public static Result result(ResolveResult resolveResult, Throwable ex) {
+
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DriverUnavailableException) {
+                return Result.UNAVAILABLE;
+            }
+            if (cause instanceof CancellationException) {
+                return Result.CANCELLED;
+            }
+            // socket, connect and connection pool timeouts of the HTTP client
+            if (cause instanceof InterruptedIOException || cause instanceof TimeoutException) {
+                return Result.TIMEOUT;
+            }
+        }
+
+        if (ex != null) {
+            return Result.ERROR;
+        }
+
+        if (resolveResult == null || (resolveResult.getDidDocument() == null && resolveResult.getContent() == null)) {
+            return Result.NOT_FOUND;
+        }
+
+        return Result.FOUND;
+    }
+
+    /*
+     * Helper methods
+     */
+    private double cacheStat(ToDoubleFunction<MemoryResolveCache> stat) {
+
+        ResolveCache current = cache.get();
+        return current instanceof MemoryResolveCache ? stat.applyAsDouble((MemoryResolveCache) current) : 0.0;
+    }
+
+    private AtomicInteger driverInFlight(String driverId) {
+
+        return driversInFlight.computeIfAbsent(driverId, id -> {
+            AtomicInteger driverInFlight = new AtomicInteger();
+            registry.gauge("resolver.driver.inflight", Tags.of("driver", id), driverInFlight);
+            return driverInFlight;
+        });
+    }
+}
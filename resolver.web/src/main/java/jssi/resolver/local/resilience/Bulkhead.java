@@ -0,0 +1,74 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local.resilience;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the concurrent calls to a driver. Calls beyond the limit are rejected
+ * at once instead of queuing behind a slow upstream.
+ *
+ * @author UBICUA
+ */
+public class Bulkhead {
+
+    public static final int DEFAULT_MAX_CONCURRENT_CALLS = 25;
+
+    private final int maxConcurrentCalls;
+    private final Semaphore permits;
+    private final AtomicLong rejected = new AtomicLong();
+
+    public Bulkhead(int maxConcurrentCalls) {
+
+        if (maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("Bulkhead concurrent calls must be positive: " + maxConcurrentCalls);
+        }
+
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.permits = new Semaphore(maxConcurrentCalls);
+    }
+
+    public boolean tryAcquire() {
+
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public Map<String, Object> stats() {
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("active", maxConcurrentCalls - permits.availablePermits());
+        stats.put("max", maxConcurrentCalls);
+        stats.put("rejected", rejected.get());
+        return stats;
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local.resilience;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+import jssi.resolver.driver.http.DriverResponseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uniresolver.ResolutionException;
+
+/**
+ * Circuit breaker of a driver. The outcome of the last calls is kept in a
+ * sliding window; the circuit opens when the failure rate or the rate of slow
+ * calls reaches its threshold. While open, calls are rejected. After the open
+ * duration a few probe calls are let through: the circuit closes if all of
+ * them succeed in time and opens again otherwise. Only errors of the driver
+ * count as failures: a client error, such as a malformed or unknown
+ * identifier, is a successful call, so that bad requests cannot open the
+ * circuit for everyone.
+ *
+ * @author UBICUA
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public static final int DEFAULT_WINDOW_SIZE = 20;
+    public static final int DEFAULT_MINIMUM_CALLS = 10;
+    public static final int DEFAULT_FAILURE_RATE_THRESHOLD = 50;
+    public static final int DEFAULT_SLOW_CALL_RATE_THRESHOLD = 80;
+    public static final long DEFAULT_SLOW_CALL_DURATION = 5000L;
+    public static final long DEFAULT_OPEN_DURATION = 30000L;
+    public static final int DEFAULT_HALF_OPEN_CALLS = 3;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallDuration;
+    private final long openDuration;
+    private final int halfOpenCalls;
+    private final LongSupplier clock;
+
+    private final boolean[] failures;
+    private final boolean[] slowCalls;
+    private int position = 0;
+    private int calls = 0;
+    private int failureCount = 0;
+    private int slowCallCount = 0;
+
+    private State state = State.CLOSED;
+    private long openedAt = 0L;
+    private int halfOpenPermits = 0;
+    private int halfOpenSuccesses = 0;
+    private long rejected = 0L;
+
+    public CircuitBreaker(String name) {
+        this(name, DEFAULT_WINDOW_SIZE, DEFAULT_MINIMUM_CALLS, DEFAULT_FAILURE_RATE_THRESHOLD, DEFAULT_SLOW_CALL_RATE_THRESHOLD, DEFAULT_SLOW_CALL_DURATION, DEFAULT_OPEN_DURATION, DEFAULT_HALF_OPEN_CALLS);
+    }
+
+    /**
+     * @param name driver id, for logging
+     * @param windowSize number of calls in the sliding window
+     * @param minimumCalls calls needed before the rates are evaluated
+     * @param failureRateThreshold failure rate opening the circuit (percent)
+     * @param slowCallRateThreshold slow call rate opening the circuit (percent)
+     * @param slowCallDuration duration of a slow call (milliseconds)
+     * @param openDuration time before probing an open circuit (milliseconds)
+     * @param halfOpenCalls probe calls let through when half open
+     */
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, int failureRateThreshold, int slowCallRateThreshold, long slowCallDuration, long openDuration, int halfOpenCalls) {
+        this(name, windowSize, minimumCalls, failureRateThreshold, slowCallRateThreshold, slowCallDuration, openDuration, halfOpenCalls, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock current time (milliseconds)
+     */
+    CircuitBreaker(String name, int windowSize, int minimumCalls, int failureRateThreshold, int slowCallRateThreshold, long slowCallDuration, long openDuration, int halfOpenCalls, LongSupplier clock) {
+
+        if (windowSize < 1 || halfOpenCalls < 1) {
+            throw new IllegalArgumentException("Circuit breaker window and half open calls must be positive");
+        }
+
+        this.name = name;
+        this.windowSize = windowSize;
+        this.minimumCalls = Math.min(Math.max(minimumCalls, 1), windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDuration = slowCallDuration;
+        this.openDuration = openDuration;
+        this.halfOpenCalls = halfOpenCalls;
+        this.clock = clock;
+        this.failures = new boolean[windowSize];
+        this.slowCalls = new boolean[windowSize];
+    }
+
+    /**
+     * Asks permission for a call. Every permitted call must be followed by
+     * onSuccess, onFailure or release.
+     */
+    public synchronized boolean tryAcquire() {
+
+        if (state == State.OPEN) {
+            if (clock.getAsLong() - openedAt < openDuration) {
+                rejected++;
+                return false;
+            }
+            transition(State.HALF_OPEN);
+            halfOpenPermits = halfOpenCalls;
+            halfOpenSuccesses = 0;
+        }
+
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits == 0) {
+                rejected++;
+                return false;
+            }
+            halfOpenPermits--;
+        }
+
+        return true;
+    }
+
+    public synchronized void onSuccess(long duration) {
+        record(false, duration);
+    }
+
+    public synchronized void onFailure(long duration) {
+        record(true, duration);
+    }
+
+    /**
+     * Records a call that ended with an error, as a failure or as a
+     * successful call.
+     */
+    public synchronized void onError(long duration, Throwable ex) {
+        record(isFailure(ex), duration);
+    }
+
+    /**
+     * True if the error is one of the driver: an I/O error, a timeout, a 5xx,
+     * timeout or rate limit answer, or an unexpected exception. False for an
+     * answer to a bad request (4xx) and a resolution error without I/O cause.
+     */
+    public static boolean isFailure(Throwable ex) {
+
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException || cause instanceof TimeoutException) {
+                return true;
+            }
+            if (cause instanceof DriverResponseException) {
+                return !((DriverResponseException) cause).isClientError();
+            }
+        }
+
+        Throwable error = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        return !(error instanceof ResolutionException);
+    }
+
+    /**
+     * Gives back the permission of a call without outcome, e.g. cancelled.
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN && halfOpenPermits < halfOpenCalls - halfOpenSuccesses) {
+            halfOpenPermits++;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized Map<String, Object> stats() {
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", state.name());
+        stats.put("calls", calls);
+        stats.put("failureRate", rate(failureCount));
+        stats.put("slowCallRate", rate(slowCallCount));
+        stats.put("rejected", rejected);
+        return stats;
+    }
+
+    /*
+     * Helper methods
+     */
+    private void record(boolean failure, long duration) {
+
+        boolean slow = duration >= slowCallDuration;
+
+        if (state == State.HALF_OPEN) {
+            if (failure || slow) {
+                open();
+            } else if (++halfOpenSuccesses >= halfOpenCalls) {
+                transition(State.CLOSED);
+            }
+            return;
+        }
+
+        if (state == State.OPEN) {
+            // late outcome of a call permitted before the circuit opened
+            return;
+        }
+
+        if (calls == windowSize) {
+            failureCount -= failures[position] ? 1 : 0;
+            slowCallCount -= slowCalls[position] ? 1 : 0;
+        } else {
+            calls++;
+        }
+
+        failures[position] = failure;
+        slowCalls[position] = slow;
+        failureCount += failure ? 1 : 0;
+        slowCallCount += slow ? 1 : 0;
+        position = (position + 1) % windowSize;
+
+        if (calls >= minimumCalls && (rate(failureCount) >= failureRateThreshold || rate(slowCallCount) >= slowCallRateThreshold)) {
+            open();
+        }
+    }
+
+    private void open() {
+        openedAt = clock.getAsLong();
+        transition(State.OPEN);
+    }
+
+    private void transition(State next) {
+
+        if (LOG.isWarnEnabled()) {
+            LOG.warn(String.format("Circuit of driver %s: %s -> %s (failure rate %d%%, slow call rate %d%% of %d calls)",
+                    name, state, next, rate(failureCount), rate(slowCallCount), calls));
+        }
+
+        state = next;
+
+        if (next != State.HALF_OPEN) {
+            position = 0;
+            calls = 0;
+            failureCount = 0;
+            slowCallCount = 0;
+        }
+    }
+
+    private int rate(int count) {
+        return calls == 0 ? 0 : count * 100 / calls;
+    }
+}
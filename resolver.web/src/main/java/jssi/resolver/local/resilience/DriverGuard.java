@@ -0,0 +1,145 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local.resilience;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+import jssi.resolver.local.SingleFlight.Resolution;
+import uniresolver.ResolutionException;
+import uniresolver.driver.Driver;
+import uniresolver.result.ResolveResult;
+
+/**
+ * Circuit breaker and bulkhead wrapping the calls to one driver.
+ *
+ * @author UBICUA
+ */
+public class DriverGuard {
+
+    private final String driverId;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+
+    public DriverGuard(String driverId, CircuitBreaker circuitBreaker, Bulkhead bulkhead) {
+        this.driverId = driverId;
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+    }
+
+    public ResolveResult resolve(Driver driver, String identifier) throws ResolutionException {
+        return resolve(() -> driver.resolve(identifier));
+    }
+
+    /**
+     * Guards a blocking call.
+     */
+    public ResolveResult resolve(Resolution call) throws ResolutionException {
+
+        acquire();
+
+        long start = System.currentTimeMillis();
+        try {
+            ResolveResult resolveResult = call.resolve();
+            circuitBreaker.onSuccess(System.currentTimeMillis() - start);
+            return resolveResult;
+        } catch (ResolutionException | RuntimeException ex) {
+            circuitBreaker.onError(System.currentTimeMillis() - start, ex);
+            throw ex;
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * Guards an asynchronous call. The returned future is the one of the
+     * call, so cancelling it still cancels the call.
+     */
+    public CompletableFuture<ResolveResult> resolveAsync(Supplier<CompletableFuture<ResolveResult>> call) {
+
+        try {
+            acquire();
+        } catch (DriverUnavailableException ex) {
+            CompletableFuture<ResolveResult> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(ex);
+            return rejected;
+        }
+
+        long start = System.currentTimeMillis();
+        CompletableFuture<ResolveResult> resolveResult;
+
+        try {
+            resolveResult = call.get();
+        } catch (RuntimeException ex) {
+            resolveResult = new CompletableFuture<>();
+            resolveResult.completeExceptionally(ex);
+        }
+
+        resolveResult.whenComplete((result, ex) -> {
+            bulkhead.release();
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            if (cause == null) {
+                circuitBreaker.onSuccess(System.currentTimeMillis() - start);
+            } else if (cause instanceof CancellationException) {
+                circuitBreaker.release();
+            } else {
+                circuitBreaker.onError(System.currentTimeMillis() - start, cause);
+            }
+        });
+
+        return resolveResult;
+    }
+
+    public String getDriverId() {
+        return driverId;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    public Map<String, Object> stats() {
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("circuitBreaker", circuitBreaker.stats());
+        stats.put("bulkhead", bulkhead.stats());
+        return stats;
+    }
+
+    /*
+     * Helper methods
+     */
+    private void acquire() throws DriverUnavailableException {
+
+        if (!bulkhead.tryAcquire()) {
+            throw new DriverUnavailableException("Too many concurrent calls to driver " + driverId);
+        }
+
+        if (!circuitBreaker.tryAcquire()) {
+            bulkhead.release();
+            throw new DriverUnavailableException("Circuit open for driver " + driverId);
+        }
+    }
+}
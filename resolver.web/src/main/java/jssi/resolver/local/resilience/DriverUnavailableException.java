@@ -0,0 +1,35 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local.resilience;
+
+import uniresolver.ResolutionException;
+
+/**
+ * A driver call rejected without being attempted, because the circuit of the
+ * driver is open or its bulkhead is full.
+ *
+ * @author UBICUA
+ */
+public class DriverUnavailableException extends ResolutionException {
+
+    private static final long serialVersionUID = 1L;
+
+    public DriverUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,431 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import jssi.resolver.driver.http.HttpDriver;
+import jssi.resolver.local.BatchResolver;
+import jssi.resolver.local.DriverIndex;
+import jssi.resolver.local.DriverRegistry;
+import jssi.resolver.local.DriverSnapshot;
+import jssi.resolver.local.Drivers;
+import jssi.resolver.local.LocalUniResolver;
+import jssi.resolver.local.ResolutionOptions;
+import jssi.resolver.local.cache.ResolveCache;
+import jssi.resolver.local.health.DriverHealth;
+import jssi.resolver.local.resilience.DriverGuard;
+import uniresolver.driver.Driver;
+import uniresolver.result.ResolveResult;
+
+/**
+ * Administration of the running resolver: drivers, dispatch table and resolve
+ * cache. Access is restricted to the "admin" role in web.xml.
+ *
+ * @author UBICUA
+ */
+@RequestScoped
+@Path("admin")
+public class Admin {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Admin.class);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final Set<String> DRIVER_MEMBERS = new HashSet<>(Arrays.asList(
+            "enabled", "priority", "connectTimeout", "socketTimeout", "requestTimeout", "maxConnections"));
+
+    @Inject
+    private Drivers drivers;
+
+    @Inject
+    private LocalUniResolver resolver;
+
+    /**
+     * Every registered driver, enabled or not, with its configuration, pool,
+     * resilience and health state.
+     * @return the drivers in dispatch order
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("drivers")
+    public Response getDrivers() {
+
+        DriverSnapshot snapshot = drivers.snapshot();
+        List<Map<String, Object>> stats = new ArrayList<>();
+        for (DriverRegistry.Registration registration : snapshot.getRegistry().getRegistrations()) {
+            stats.add(stats(snapshot, registration));
+        }
+        return toResponse(stats);
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("drivers/{id: .+}")
+    public Response getDriver(@PathParam("id") String id) {
+
+        DriverSnapshot snapshot = drivers.snapshot();
+        DriverRegistry.Registration registration = snapshot.getRegistry().getRegistration(id);
+        if (registration == null) {
+            return toErrorResponse(Response.Status.NOT_FOUND, "No driver " + id);
+        }
+        return toResponse(stats(snapshot, registration));
+    }
+
+    /**
+     * Changes the driver with the members of the JSON object in the request
+     * body: "enabled", "priority", "connectTimeout", "socketTimeout",
+     * "requestTimeout" and "maxConnections". Missing members are left as they
+     * are. The whole body is checked before anything is changed: an unknown
+     * member or a value of the wrong type rejects the request.
+     * @param id
+     * @param body
+     * @return the changed driver
+     */
+    @PUT
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("drivers/{id: .+}")
+    public Response updateDriver(@PathParam("id") String id, String body) {
+
+        if (drivers.getRegistry().getRegistration(id) == null) {
+            return toErrorResponse(Response.Status.NOT_FOUND, "No driver " + id);
+        }
+
+        JsonNode item;
+        try {
+            item = objectMapper.readTree(body);
+        } catch (IOException ex) {
+            return toErrorResponse(Response.Status.BAD_REQUEST, String.format("Expected a JSON object: %s", ex.getMessage()));
+        }
+        if (item == null || !item.isObject()) {
+            return toErrorResponse(Response.Status.BAD_REQUEST, "Expected a JSON object");
+        }
+
+        try {
+            for (Iterator<String> names = item.fieldNames(); names.hasNext();) {
+                String name = names.next();
+                if (!DRIVER_MEMBERS.contains(name)) {
+                    throw new IllegalArgumentException("Unknown member '" + name + "'");
+                }
+            }
+
+            Boolean enabled = booleanMember(item, "enabled");
+            Integer priority = intMember(item, "priority");
+            Integer connectTimeout = intMember(item, "connectTimeout");
+            Integer socketTimeout = intMember(item, "socketTimeout");
+            Integer requestTimeout = intMember(item, "requestTimeout");
+            Integer maxConnections = intMember(item, "maxConnections");
+
+            if (LOG.isInfoEnabled()) {
+                LOG.info(String.format("Updating driver %s: %s", id, item));
+            }
+
+            drivers.updateDriver(id, enabled, priority, connectTimeout, socketTimeout, requestTimeout, maxConnections);
+        } catch (IllegalArgumentException ex) {
+            return toErrorResponse(Response.Status.BAD_REQUEST, ex.getMessage());
+        }
+
+        return getDriver(id);
+    }
+
+    /**
+     * Dispatch table of the current drivers: the candidates per DID method
+     * ("*" for any identifier) in configured order and in the order they are
+     * tried now, after health routing.
+     * @return the dispatch table
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("dispatch")
+    public Response getDispatch() {
+
+        DriverSnapshot snapshot = drivers.snapshot();
+        DriverIndex index = snapshot.getIndex();
+        Map<String, List<String>> table = index.table();
+
+        Map<String, List<String>> routed = new LinkedHashMap<>();
+        for (String method : table.keySet()) {
+            Map<String, Driver> candidates = index.forMethod("*".equals(method) ? null : method);
+            Map<String, Driver> route = snapshot.getHealthChecker() != null ? snapshot.getHealthChecker().route(candidates) : candidates;
+            routed.put(method, new ArrayList<>(route.keySet()));
+        }
+
+        List<String> disabled = new ArrayList<>();
+        for (DriverRegistry.Registration registration : snapshot.getRegistry().getRegistrations()) {
+            if (!registration.isEnabled()) {
+                disabled.add(registration.getId());
+            }
+        }
+
+        Map<String, Object> dispatch = new LinkedHashMap<>();
+        dispatch.put("mode", snapshot.getRace() != null ? "race" : "sequential");
+        dispatch.put("routing", snapshot.getHealthChecker() != null ? snapshot.getHealthChecker().getRouting().name().toLowerCase() : null);
+        dispatch.put("table", table);
+        dispatch.put("routed", routed);
+        dispatch.put("disabled", disabled);
+        return toResponse(dispatch);
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("cache")
+    public Response getCache() {
+
+        ResolveCache cache = drivers.getCache();
+        if (cache == null) {
+            return toErrorResponse(Response.Status.NOT_FOUND, "Resolve cache is disabled");
+        }
+        return toResponse(cache.stats());
+    }
+
+    /**
+     * Removes the cached results of a DID, with any resolution options, the
+     * cached results of a DID method, or every cached result if neither is
+     * given.
+     * @param did
+     * @param method
+     * @return the number of removed entries
+     */
+    @DELETE
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("cache")
+    public Response purgeCache(@QueryParam("did") String did, @QueryParam("method") String method) {
+
+        ResolveCache cache = drivers.getCache();
+        if (cache == null) {
+            return toErrorResponse(Response.Status.NOT_FOUND, "Resolve cache is disabled");
+        }
+
+        int purged;
+        if (did != null) {
+            purged = cache.invalidateIf(key -> did.equals(ResolutionOptions.identifier(key)));
+        } else if (method != null) {
+            purged = cache.invalidateIf(key -> method.equals(DriverIndex.method(key)));
+        } else {
+            purged = cache.invalidateIf(key -> true);
+        }
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info(String.format("Purged %d cache entries (did %s, method %s)", purged, did, method));
+        }
+
+        return toResponse(Collections.singletonMap("purged", purged));
+    }
+
+    /**
+     * Resolves again, bypassing the cache, the DIDs of the JSON array in the
+     * request body and, if a method is given, the cached DIDs of that method,
+     * so that their cache entries are fresh. The response has an entry per
+     * DID with its status.
+     * @param method
+     * @param body
+     * @param asyncResponse
+     */
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("cache/warm")
+    public void warmCache(@QueryParam("method") String method, String body, @Suspended AsyncResponse asyncResponse) {
+
+        ResolveCache cache = drivers.getCache();
+        if (cache == null) {
+            asyncResponse.resume(toErrorResponse(Response.Status.NOT_FOUND, "Resolve cache is disabled"));
+            return;
+        }
+
+        Set<String> identifiers = new LinkedHashSet<>();
+
+        if (body != null && !body.trim().isEmpty()) {
+            try {
+                List<String> dids = objectMapper.readValue(body, new TypeReference<List<String>>() {});
+                if (dids != null) {
+                    identifiers.addAll(dids);
+                }
+            } catch (IOException ex) {
+                asyncResponse.resume(toErrorResponse(Response.Status.BAD_REQUEST, String.format("Expected a JSON array of identifiers: %s", ex.getMessage())));
+                return;
+            }
+        }
+
+        if (method != null) {
+            for (String key : cache.keys()) {
+                if (method.equals(DriverIndex.method(key))) {
+                    identifiers.add(ResolutionOptions.identifier(key));
+                }
+            }
+        }
+
+        identifiers.remove(null);
+        if (identifiers.isEmpty()) {
+            asyncResponse.resume(toErrorResponse(Response.Status.BAD_REQUEST, "No identifiers to warm"));
+            return;
+        }
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info(String.format("Warming %d cache entries", identifiers.size()));
+        }
+
+        // the fresh results replace the cached ones
+        Map<String, String> options = Collections.singletonMap(ResolutionOptions.NO_CACHE, Boolean.TRUE.toString());
+        Map<String, CompletableFuture<ResolveResult>> results = new BatchResolver(resolver, drivers.getBatchParallelism()).resolve(identifiers, options);
+
+        CompletableFuture.allOf(results.values().toArray(new CompletableFuture<?>[0])).whenComplete((ignored, ex) -> {
+
+            List<Map<String, Object>> warmed = new ArrayList<>();
+            for (Map.Entry<String, CompletableFuture<ResolveResult>> result : results.entrySet()) {
+                warmed.add(warmed(result.getKey(), result.getValue()));
+            }
+            asyncResponse.resume(toResponse(warmed));
+        });
+    }
+
+    /*
+     * Helper methods
+     */
+    private Map<String, Object> stats(DriverSnapshot snapshot, DriverRegistry.Registration registration) {
+
+        String id = registration.getId();
+        Driver driver = registration.getDriver();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("id", id);
+        stats.put("enabled", registration.isEnabled());
+        stats.put("priority", registration.getPriority());
+        stats.put("type", driver.getClass().getSimpleName());
+
+        if (driver instanceof HttpDriver) {
+            stats.put("http", ((HttpDriver) driver).httpProperties());
+        }
+
+        if (snapshot.getCache() != null) {
+            stats.put("cacheTtl", snapshot.getCache().getTtl(id));
+        }
+
+        DriverGuard guard = snapshot.getGuard(id);
+        if (guard != null) {
+            stats.put("resilience", guard.stats());
+        }
+
+        DriverHealth health = snapshot.getHealth(id);
+        if (health != null) {
+            stats.put("health", health.stats());
+        }
+
+        return stats;
+    }
+
+    private static Map<String, Object> warmed(String identifier, CompletableFuture<ResolveResult> result) {
+
+        Map<String, Object> warmed = new LinkedHashMap<>();
+        warmed.put("identifier", identifier);
+
+        try {
+            ResolveResult resolveResult = result.join();
+            boolean found = resolveResult != null && (resolveResult.getDidDocument() != null || resolveResult.getContent() != null);
+            warmed.put("status", found ? Response.Status.OK.getStatusCode() : Response.Status.NOT_FOUND.getStatusCode());
+        } catch (CompletionException | CancellationException ex) {
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            warmed.put("status", Response.Status.INTERNAL_SERVER_ERROR.getStatusCode());
+            warmed.put("error", String.format("Resolver problem for %s: %s", identifier, cause.getMessage()));
+        }
+
+        return warmed;
+    }
+
+    private static Boolean booleanMember(JsonNode item, String name) {
+
+        JsonNode value = item.get(name);
+        if (value == null) {
+            return null;
+        }
+        if (!value.isBoolean()) {
+            throw new IllegalArgumentException("'" + name + "' must be a boolean");
+        }
+        return value.booleanValue();
+    }
+
+    private static Integer intMember(JsonNode item, String name) {
+
+        JsonNode value = item.get(name);
+        if (value == null) {
+            return null;
+        }
+        if (!value.isIntegralNumber() || !value.canConvertToInt()) {
+            throw new IllegalArgumentException("'" + name + "' must be an integer");
+        }
+        return value.intValue();
+    }
+
+    private static Response toResponse(Object entity) {
+
+        try {
+            return Response
+                    .status(Response.Status.OK)
+                    .entity(objectMapper.writeValueAsString(entity))
+                    .build();
+        } catch (JsonProcessingException ex) {
+            return toErrorResponse(Response.Status.INTERNAL_SERVER_ERROR, ex.getMessage());
+        }
+    }
+
+    private static Response toErrorResponse(Response.Status status, String message) {
+
+        if (LOG.isWarnEnabled()) {
+            LOG.warn(String.format("Admin request failed: %s", message));
+        }
+
+        return Response
+                .status(status)
+                .entity(message)
+                .build();
+    }
+}
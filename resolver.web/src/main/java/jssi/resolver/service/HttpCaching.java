@@ -0,0 +1,201 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Response;
+import jssi.resolver.local.cache.ResolveCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uniresolver.result.ResolveResult;
+
+/**
+ * Validators and freshness of resolution responses, so that clients and
+ * proxies can reuse them. The ETag is the SHA-256 of the canonical JSON of the
+ * DID document and its metadata: the resolution metadata (duration, cache
+ * flags, timing) describes the request rather than the document and is left
+ * out. Since that metadata is still in the body, two responses with the same
+ * ETag are equivalent but not byte for byte equal, so the ETag is weak.
+ * The max-age is what is left of the driver TTL in the resolve cache, or for
+ * documents whose last update is known from the ledger, a tenth of the time
+ * since that update, up to a day.
+ *
+ * @author UBICUA
+ */
+final class HttpCaching {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HttpCaching.class);
+
+    public static final int MAX_HEURISTIC_AGE = 86400;
+
+    private static final ObjectMapper canonicalMapper = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    private HttpCaching() {
+    }
+
+    /**
+     * Weak entity tag of the result, or null if it cannot be computed.
+     */
+    static EntityTag entityTag(ResolveResult resolveResult) {
+
+        Map<String, Object> canonical = new LinkedHashMap<>();
+        canonical.put("didDocument", resolveResult.getDidDocument() != null ? resolveResult.getDidDocument().getJsonObject() : null);
+        canonical.put("didDocumentMetadata", resolveResult.getDidDocumentMetadata());
+        canonical.put("content", resolveResult.getContent());
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(canonicalMapper.writeValueAsString(canonical).getBytes(StandardCharsets.UTF_8));
+            return new EntityTag(Base64.getUrlEncoder().withoutPadding().encodeToString(hash), true);
+        } catch (JsonProcessingException | NoSuchAlgorithmException ex) {
+            if (LOG.isWarnEnabled()) {
+                LOG.warn(String.format("Cannot compute ETag: %s", ex.getMessage()));
+            }
+            return null;
+        }
+    }
+
+    /**
+     * True if the If-None-Match header matches the entity tag, by the weak
+     * comparison that If-None-Match uses: tags match by their value.
+     */
+    static boolean matches(String ifNoneMatch, EntityTag entityTag) {
+
+        if (ifNoneMatch == null || entityTag == null) {
+            return false;
+        }
+
+        for (String tag : ifNoneMatch.split(",")) {
+            String value = tag.trim();
+            if ("*".equals(value)) {
+                return true;
+            }
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("\"" + entityTag.getValue() + "\"")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Time of the last update of the document from its metadata: the
+     * "updated" property, or the latest Indy transaction time of the NYM and
+     * ATTR replies. Null if unknown.
+     */
+    static Date lastModified(ResolveResult resolveResult) {
+
+        Map<String, Object> metadata = resolveResult.getDidDocumentMetadata();
+        if (metadata == null) {
+            return null;
+        }
+
+        Object updated = metadata.get("updated");
+        if (updated instanceof String) {
+            try {
+                return Date.from(Instant.parse((String) updated));
+            } catch (DateTimeParseException ex) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Ignoring updated time " + updated + ": " + ex.getMessage());
+                }
+            }
+        }
+
+        long txnTime = Math.max(txnTime(metadata.get("nymResponse")), txnTime(metadata.get("attrResponse")));
+        return txnTime > 0 ? new Date(txnTime * 1000) : null;
+    }
+
+    /**
+     * Cache-Control of the result: a max-age, or no-cache (the
+     * client revalidates with the ETag) when no freshness is known.
+     */
+    static CacheControl cacheControl(ResolveResult resolveResult, Date lastModified, ResolveCache cache) {
+
+        long maxAge = -1L;
+        Map<String, Object> resolutionMetadata = resolveResult.getDidResolutionMetadata();
+
+        Object driverId = resolutionMetadata.get("driverId");
+        if (cache != null && driverId instanceof String) {
+            Object cacheAge = resolutionMetadata.get("cacheAge");
+            long age = cacheAge instanceof Number ? ((Number) cacheAge).longValue() : 0L;
+            maxAge = Math.max(0L, (cache.getTtl((String) driverId) - age) / 1000);
+        }
+
+        if (lastModified != null) {
+            long sinceUpdate = (System.currentTimeMillis() - lastModified.getTime()) / 1000;
+            maxAge = Math.max(maxAge, Math.min(sinceUpdate / 10, MAX_HEURISTIC_AGE));
+        }
+
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setNoTransform(false);
+        if (maxAge > 0) {
+            cacheControl.setMaxAge((int) Math.min(maxAge, Integer.MAX_VALUE));
+        } else {
+            cacheControl.setNoCache(true);
+        }
+        return cacheControl;
+    }
+
+    /**
+     * Adds the validators and the Cache-Control to a response.
+     */
+    static Response.ResponseBuilder headers(Response.ResponseBuilder response, EntityTag entityTag, Date lastModified, CacheControl cacheControl) {
+
+        if (entityTag != null) {
+            response.tag(entityTag);
+        }
+        if (lastModified != null) {
+            response.lastModified(lastModified);
+        }
+        return response.cacheControl(cacheControl);
+    }
+
+    /*
+     * Helper methods
+     */
+    private static long txnTime(Object response) {
+
+        if (!(response instanceof Map)) {
+            return 0L;
+        }
+
+        Object result = ((Map<?, ?>) response).get("result");
+        if (!(result instanceof Map)) {
+            return 0L;
+        }
+
+        Object txnTime = ((Map<?, ?>) result).get("txnTime");
+        return txnTime instanceof Number ? ((Number) txnTime).longValue() : 0L;
+    }
+}
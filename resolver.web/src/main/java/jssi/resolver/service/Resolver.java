@@ -18,23 +18,49 @@
 package jssi.resolver.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.prometheus.client.exporter.common.TextFormat;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.Produces;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import jssi.resolver.local.BatchResolver;
 import jssi.resolver.local.Drivers;
 import jssi.resolver.local.LocalUniResolver;
+import jssi.resolver.local.ResolutionOptions;
+import jssi.resolver.local.ResolutionTiming;
+import jssi.resolver.local.metrics.ResolverMetrics;
 import uniresolver.ResolutionException;
 import uniresolver.UniResolver;
 import uniresolver.result.ResolveResult;
@@ -50,12 +76,20 @@ import uniresolver.result.ResolveResult;
 public class Resolver implements UniResolver{
     
     private static final Logger LOG = LoggerFactory.getLogger(Resolver.class);
+    
+    private static final ObjectMapper objectMapper = new ObjectMapper();
 
     @Context
     private UriInfo context;
     
     @Inject
     private Drivers drivers;
+    
+    @Inject
+    private LocalUniResolver resolver;
+    
+    @Inject
+    private ResolverMetrics metrics;
 
     /**
      * Creates a new instance of Identifier
@@ -66,12 +100,16 @@ public class Resolver implements UniResolver{
     /**
      * Retrieves representation of an instance of ubicua.resolver.service.Identifier
      * @param identifier
-     * @return an instance of DidDocument
+     * @param timing adds the timing of the resolution phases to the metadata
+     * @param cacheControl "no-cache" or "max-age" directives, when not given
+     * as query parameters
+     * @param ifNoneMatch entity tags of the result held by the client
+     * @return an instance of DidDocument, or 304 if the client holds it
      */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("identifiers/{identifier}")
-    public Response getDidDocument(@PathParam("identifier") String identifier) {
+    public Response getDidDocument(@PathParam("identifier") String identifier, @QueryParam(ResolutionTiming.OPTION) boolean timing, @HeaderParam(HttpHeaders.CACHE_CONTROL) String cacheControl, @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
         if (LOG.isDebugEnabled()) {
             LOG.debug(String.format("Processing identifier %s", identifier));
         }
@@ -79,31 +117,261 @@ public class Resolver implements UniResolver{
         try {
             identifier = URLDecoder.decode(identifier, "UTF-8");
         } catch (UnsupportedEncodingException ex) {
-            
-            if (LOG.isErrorEnabled()) {
-                LOG.error(String.format("Request problem: %s", ex.getMessage()), ex);
-            }
-            
-            return Response
-                .status(Response.Status.INTERNAL_SERVER_ERROR)
-                .entity(ex.getLocalizedMessage())
-                .build();
+            return toErrorResponse(ex);
         }
         
         ResolveResult resolveResult;
         
         try {
-            resolveResult = resolve(identifier);
+            resolveResult = resolve(identifier, options(cacheControl));
         } catch (ResolutionException ex) {
-            if (LOG.isErrorEnabled()) {
-                LOG.error(String.format("Resolver problem for %s: %s", identifier, ex.getMessage()), ex);
+            return toErrorResponse(identifier, ex);
+        }
+
+        return toResponse(identifier, resolveResult, timing, ifNoneMatch);
+    }
+
+    /**
+     * Asynchronous variant of getDidDocument: the container thread is released
+     * while the drivers are waiting on the network.
+     * @param identifier
+     * @param timing adds the timing of the resolution phases to the metadata
+     * @param cacheControl "no-cache" or "max-age" directives, when not given
+     * as query parameters
+     * @param ifNoneMatch entity tags of the result held by the client
+     * @param asyncResponse
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("async/identifiers/{identifier}")
+    public void getDidDocumentAsync(@PathParam("identifier") String identifier, @QueryParam(ResolutionTiming.OPTION) boolean timing, @HeaderParam(HttpHeaders.CACHE_CONTROL) String cacheControl, @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch, @Suspended AsyncResponse asyncResponse) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Processing identifier %s asynchronously", identifier));
+        }
+        
+        String decodedIdentifier;
+        
+        try {
+            decodedIdentifier = URLDecoder.decode(identifier, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            asyncResponse.resume(toErrorResponse(ex));
+            return;
+        }
+        
+        resolver.resolveAsync(decodedIdentifier, options(cacheControl)).whenComplete((resolveResult, ex) -> {
+            if (ex != null) {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                asyncResponse.resume(toErrorResponse(decodedIdentifier, cause));
+            } else {
+                asyncResponse.resume(toResponse(decodedIdentifier, resolveResult, timing, ifNoneMatch));
             }
-    
+        });
+    }
+
+    /**
+     * Resolves the JSON array of identifiers in the request body. The response
+     * is a JSON array with an entry per distinct identifier, in request order,
+     * holding either its resolve result or its error. The query parameters
+     * are the resolution options of every identifier. After the batch timeout
+     * the response holds the results completed so far and a timeout error for
+     * the other identifiers.
+     * @param body
+     * @param cacheControl
+     * @param asyncResponse
+     */
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("identifiers")
+    public void getDidDocuments(String body, @HeaderParam(HttpHeaders.CACHE_CONTROL) String cacheControl, @Suspended AsyncResponse asyncResponse) {
+        
+        Map<String, CompletableFuture<ResolveResult>> results;
+        
+        try {
+            results = resolveBatch(body, options(cacheControl));
+        } catch (WebApplicationException ex) {
+            asyncResponse.resume(ex.getResponse());
+            return;
+        }
+        
+        long timeout = drivers.getBatchTimeout();
+        if (timeout > 0) {
+            asyncResponse.setTimeout(timeout, TimeUnit.MILLISECONDS);
+            asyncResponse.setTimeoutHandler(response -> {
+                TimeoutException timeoutEx = new TimeoutException("Batch timeout after " + timeout + " ms");
+                for (CompletableFuture<ResolveResult> result : results.values()) {
+                    result.completeExceptionally(timeoutEx);
+                }
+                response.resume(Response
+                        .status(Response.Status.OK)
+                        .entity(StreamingResults.batchArray(results, metrics))
+                        .build());
+            });
+        }
+
+        CompletableFuture.allOf(results.values().toArray(new CompletableFuture<?>[0])).whenComplete((ignored, ex) -> {
+            asyncResponse.resume(Response
+                    .status(Response.Status.OK)
+                    .entity(StreamingResults.batchArray(results, metrics))
+                    .build());
+        });
+    }
+
+    /**
+     * Streaming variant of getDidDocuments: NDJSON with a line per distinct
+     * identifier, written as soon as it is resolved.
+     * @param body
+     * @param cacheControl
+     * @return a stream of resolve results
+     */
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(StreamingResults.APPLICATION_NDJSON)
+    @Path("identifiers")
+    public Response getDidDocumentLines(String body, @HeaderParam(HttpHeaders.CACHE_CONTROL) String cacheControl) {
+        
+        try {
             return Response
-                    .status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity(String.format("Resolver problem for %s: %s", identifier, ex.getMessage()))
+                    .status(Response.Status.OK)
+                    .entity(StreamingResults.batchLines(resolveBatch(body, options(cacheControl)), metrics))
                     .build();
+        } catch (WebApplicationException ex) {
+            return ex.getResponse();
+        }
+    }
+
+    /**
+     * Properties of every driver as a JSON object keyed by driver id. The
+     * drivers are asked in parallel, each with its own timeout, and their
+     * properties are cached; a driver that fails has its error in its
+     * properties instead of failing the response.
+     * @param asyncResponse
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("properties")
+    public void getProperties(@Suspended AsyncResponse asyncResponse) {
+        
+        resolver.propertiesAsync().whenComplete((properties, ex) -> {
+            if (ex != null) {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                asyncResponse.resume(toErrorResponse("properties", cause));
+                return;
+            }
+            try {
+                asyncResponse.resume(Response
+                        .status(Response.Status.OK)
+                        .entity(objectMapper.writeValueAsString(properties))
+                        .build());
+            } catch (JsonProcessingException jsonEx) {
+                asyncResponse.resume(toErrorResponse("properties", jsonEx));
+            }
+        });
+    }
+
+    /**
+     * Properties of every driver as NDJSON, a line per driver.
+     * @return a stream of driver properties
+     */
+    @GET
+    @Produces(StreamingResults.APPLICATION_NDJSON)
+    @Path("properties")
+    public Response getPropertyLines() {
+        
+        return Response
+                .status(Response.Status.OK)
+                .entity(StreamingResults.propertiesLines(resolver))
+                .build();
+    }
+
+    /**
+     * Resolver metrics in the Prometheus text format.
+     * @return the current metrics
+     */
+    @GET
+    @Produces(TextFormat.CONTENT_TYPE_004)
+    @Path("metrics")
+    public String getMetrics() {
+        return metrics.scrape();
+    }
+
+    private Map<String, CompletableFuture<ResolveResult>> resolveBatch(String body, Map<String, String> options) {
+        
+        List<String> identifiers;
+        
+        try {
+            identifiers = objectMapper.readValue(body, new TypeReference<List<String>>() {});
+        } catch (IOException ex) {
+            throw new WebApplicationException(Response
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity(String.format("Expected a JSON array of identifiers: %s", ex.getMessage()))
+                    .build());
         }
+        
+        if (identifiers == null || identifiers.isEmpty() || identifiers.contains(null)) {
+            throw new WebApplicationException(Response
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity("Expected a non empty JSON array of identifiers")
+                    .build());
+        }
+        
+        if (identifiers.size() > drivers.getBatchMaxIdentifiers()) {
+            throw new WebApplicationException(Response
+                    .status(Response.Status.REQUEST_ENTITY_TOO_LARGE)
+                    .entity(String.format("At most %d identifiers per request", drivers.getBatchMaxIdentifiers()))
+                    .build());
+        }
+        
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Processing batch of %d identifiers", identifiers.size()));
+        }
+        
+        return new BatchResolver(resolver, drivers.getBatchParallelism()).resolve(identifiers, options);
+    }
+
+    /**
+     * Resolution options from the query parameters, the first value of each,
+     * and from the Cache-Control directives the query does not override.
+     */
+    private Map<String, String> options(String cacheControl) {
+        
+        Map<String, String> options = new HashMap<>();
+        for (Map.Entry<String, List<String>> parameter : context.getQueryParameters().entrySet()) {
+            if (!parameter.getValue().isEmpty()) {
+                options.put(parameter.getKey(), parameter.getValue().get(0));
+            }
+        }
+        
+        if (cacheControl != null) {
+            for (String directive : cacheControl.split(",")) {
+                String[] nameValue = directive.trim().split("=", 2);
+                String name = nameValue[0].trim().toLowerCase(Locale.ROOT);
+                if (ResolutionOptions.NO_CACHE.equals(name)) {
+                    options.putIfAbsent(ResolutionOptions.NO_CACHE, Boolean.TRUE.toString());
+                } else if (ResolutionOptions.MAX_AGE.equals(name) && nameValue.length == 2) {
+                    options.putIfAbsent(ResolutionOptions.MAX_AGE, nameValue[1].trim());
+                }
+            }
+        }
+        
+        String maxAge = options.get(ResolutionOptions.MAX_AGE);
+        if (maxAge != null && !maxAge.trim().matches("\\d+")) {
+            throw new WebApplicationException(Response
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity(String.format("Expected max-age in seconds: %s", maxAge))
+                    .build());
+        }
+        
+        return options.isEmpty() ? null : options;
+    }
+
+    /**
+     * The result with its ETag, Last-Modified and Cache-Control headers, or
+     * 304 without body if If-None-Match holds its ETag. The header is
+     * evaluated here rather than with Request since the asynchronous variant
+     * completes outside of the request.
+     */
+    private Response toResponse(String identifier, ResolveResult resolveResult, boolean timing, String ifNoneMatch) {
 
         if (LOG.isInfoEnabled()) {
             LOG.info(String.format("Resolver result for %s: %s", identifier, resolveResult));
@@ -116,31 +384,72 @@ public class Resolver implements UniResolver{
                     .build();
         }
 
+        EntityTag entityTag = HttpCaching.entityTag(resolveResult);
+        Date lastModified = HttpCaching.lastModified(resolveResult);
+        CacheControl cacheControl = HttpCaching.cacheControl(resolveResult, lastModified, resolver.getCache());
+
+        if (HttpCaching.matches(ifNoneMatch, entityTag)) {
+            return HttpCaching.headers(Response.notModified(), entityTag, lastModified, cacheControl).build();
+        }
+
         String message;
+        long start = System.nanoTime();
         try {
             message = resolveResult.toJson();
         } catch (JsonProcessingException ex){
             message = String.format("Resolver problem for %s: %s", identifier, ex.getMessage());
+        } finally {
+            metrics.serialization(start);
         }
-        return Response
+        
+        Response.ResponseBuilder response = HttpCaching.headers(Response
                 .status(Response.Status.OK)
-                .entity(message)
+                .entity(message), entityTag, lastModified, cacheControl);
+        
+        if (timing) {
+            // the serialization cannot be part of the serialized metadata
+            response.header("Server-Timing", String.format(Locale.ROOT, "serialization;dur=%.3f", (System.nanoTime() - start) / 1e6));
+        }
+        
+        return response.build();
+    }
+
+    private Response toErrorResponse(String identifier, Throwable ex) {
+
+        if (LOG.isErrorEnabled()) {
+            LOG.error(String.format("Resolver problem for %s: %s", identifier, ex.getMessage()), ex);
+        }
+    
+        return Response
+                .status(Response.Status.INTERNAL_SERVER_ERROR)
+                .entity(String.format("Resolver problem for %s: %s", identifier, ex.getMessage()))
                 .build();
     }
 
+    private Response toErrorResponse(UnsupportedEncodingException ex) {
+            
+        if (LOG.isErrorEnabled()) {
+            LOG.error(String.format("Request problem: %s", ex.getMessage()), ex);
+        }
+        
+        return Response
+            .status(Response.Status.INTERNAL_SERVER_ERROR)
+            .entity(ex.getLocalizedMessage())
+            .build();
+    }
+
     @Override
     public ResolveResult resolve(String identifier) throws ResolutionException {
-        UniResolver resolver = new LocalUniResolver(drivers);
         return resolver.resolve(identifier);
     }
 
     @Override
     public ResolveResult resolve(String identifier, Map<String, String> options) throws ResolutionException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return resolver.resolve(identifier, options);
     }
 
     @Override
     public Map<String, Map<String, Object>> properties() throws ResolutionException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return resolver.properties();
     }
 }
@@ -0,0 +1,208 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeoutException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import jssi.resolver.local.LocalUniResolver;
+import jssi.resolver.local.metrics.ResolverMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uniresolver.result.ResolveResult;
+
+/**
+ * Response bodies written straight to the output stream with a Jackson
+ * generator, so only the entry being written is held in memory; the results
+ * are serialized by the generator itself, not into intermediate strings.
+ * NDJSON outputs write one JSON object per line and flush it as soon as it is
+ * available.
+ *
+ * @author UBICUA
+ */
+final class StreamingResults {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingResults.class);
+
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private StreamingResults() {
+    }
+
+    /**
+     * JSON array with an entry per identifier, in the order of the map.
+     */
+    static StreamingOutput batchArray(Map<String, CompletableFuture<ResolveResult>> results, ResolverMetrics metrics) {
+
+        return output -> {
+            try (JsonGenerator generator = generator(output)) {
+                generator.writeStartArray();
+                for (Map.Entry<String, CompletableFuture<ResolveResult>> result : results.entrySet()) {
+                    writeBatchEntry(generator, result.getKey(), result.getValue(), metrics);
+                }
+                generator.writeEndArray();
+            }
+        };
+    }
+
+    /**
+     * NDJSON with an entry per identifier, in the order the resolutions
+     * complete.
+     */
+    static StreamingOutput batchLines(Map<String, CompletableFuture<ResolveResult>> results, ResolverMetrics metrics) {
+
+        BlockingQueue<String> completed = new LinkedBlockingQueue<>();
+        for (Map.Entry<String, CompletableFuture<ResolveResult>> result : results.entrySet()) {
+            result.getValue().whenComplete((resolveResult, ex) -> completed.add(result.getKey()));
+        }
+
+        return output -> {
+            try (JsonGenerator generator = lineGenerator(output)) {
+                for (int i = 0; i < results.size(); i++) {
+                    String identifier = take(completed);
+                    writeBatchEntry(generator, identifier, results.get(identifier), metrics);
+                    endLine(generator);
+                }
+            }
+        };
+    }
+
+    /**
+     * NDJSON with the properties of each driver, loaded in parallel and
+     * written in the order they complete.
+     */
+    static StreamingOutput propertiesLines(LocalUniResolver resolver) {
+
+        Map<String, CompletableFuture<Map<String, Object>>> properties = resolver.driverPropertiesAsync();
+        BlockingQueue<String> completed = new LinkedBlockingQueue<>();
+        for (Map.Entry<String, CompletableFuture<Map<String, Object>>> driverProperties : properties.entrySet()) {
+            driverProperties.getValue().whenComplete((loaded, ex) -> completed.add(driverProperties.getKey()));
+        }
+
+        return output -> {
+            try (JsonGenerator generator = lineGenerator(output)) {
+                for (int i = 0; i < properties.size(); i++) {
+                    String driverId = take(completed);
+                    generator.writeStartObject();
+                    generator.writeStringField("driverId", driverId);
+                    generator.writeObjectField("properties", properties.get(driverId).join());
+                    generator.writeEndObject();
+                    endLine(generator);
+                }
+            }
+        };
+    }
+
+    /*
+     * Helper methods
+     */
+    private static void writeBatchEntry(JsonGenerator generator, String identifier, CompletableFuture<ResolveResult> result, ResolverMetrics metrics) throws IOException {
+
+        generator.writeStartObject();
+        generator.writeStringField("identifier", identifier);
+
+        ResolveResult resolveResult = null;
+        Throwable failure = null;
+
+        try {
+            resolveResult = result.join();
+        } catch (CompletionException ex) {
+            failure = ex.getCause() != null ? ex.getCause() : ex;
+        }
+
+        if (failure instanceof TimeoutException) {
+            if (LOG.isWarnEnabled()) {
+                LOG.warn(String.format("No result for %s: %s", identifier, failure.getMessage()));
+            }
+            writeError(generator, Response.Status.GATEWAY_TIMEOUT, String.format("No result for %s: %s", identifier, failure.getMessage()));
+        } else if (failure != null) {
+            if (LOG.isErrorEnabled()) {
+                LOG.error(String.format("Resolver problem for %s: %s", identifier, failure.getMessage()), failure);
+            }
+            writeError(generator, Response.Status.INTERNAL_SERVER_ERROR, String.format("Resolver problem for %s: %s", identifier, failure.getMessage()));
+        } else if (resolveResult == null || (resolveResult.getDidDocument() == null && resolveResult.getContent() == null)) {
+            writeError(generator, Response.Status.NOT_FOUND, String.format("No resolve result for %s: %s", identifier, resolveResult));
+        } else if (!objectMapper.canSerialize(resolveResult.getClass())) {
+            writeError(generator, Response.Status.INTERNAL_SERVER_ERROR, String.format("Resolver problem for %s: cannot serialize %s", identifier, resolveResult.getClass().getName()));
+        } else {
+            long start = System.nanoTime();
+            try {
+                generator.writeNumberField("status", Response.Status.OK.getStatusCode());
+                generator.writeFieldName("result");
+                generator.writeObject(resolveResult);
+            } catch (JsonProcessingException ex) {
+                // part of the result may be written already, the body cannot be completed
+                if (LOG.isErrorEnabled()) {
+                    LOG.error(String.format("Cannot serialize result for %s: %s", identifier, ex.getMessage()), ex);
+                }
+                throw ex;
+            } finally {
+                metrics.serialization(start);
+            }
+        }
+
+        generator.writeEndObject();
+    }
+
+    private static void writeError(JsonGenerator generator, Response.Status status, String message) throws IOException {
+        generator.writeNumberField("status", status.getStatusCode());
+        generator.writeStringField("error", message);
+    }
+
+    private static JsonGenerator generator(OutputStream output) throws IOException {
+        // the factory of the mapper, writeObject serializes with it; the container closes the response stream
+        return objectMapper.getFactory().createGenerator(output, JsonEncoding.UTF8).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    private static JsonGenerator lineGenerator(OutputStream output) throws IOException {
+
+        JsonGenerator generator = generator(output);
+        generator.setPrettyPrinter(new MinimalPrettyPrinter(""));
+        return generator;
+    }
+
+    private static void endLine(JsonGenerator generator) throws IOException {
+        generator.writeRaw('\n');
+        generator.flush();
+    }
+
+    private static String take(BlockingQueue<String> completed) throws IOException {
+
+        try {
+            return completed.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for batch results");
+        }
+    }
+}
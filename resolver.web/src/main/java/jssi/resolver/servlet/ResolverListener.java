@@ -49,6 +49,7 @@ public class ResolverListener implements ServletContextListener {
 
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
+        drivers.close();
     }
 }
 
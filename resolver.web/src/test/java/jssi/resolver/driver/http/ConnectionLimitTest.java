@@ -0,0 +1,97 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.driver.http;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Requests of one driver in flight at once.
+ *
+ * @author UBICUA
+ */
+public class ConnectionLimitTest {
+
+    @Test
+    public void queuesRequestsOverTheLimit() {
+
+        ConnectionLimit limit = new ConnectionLimit(1);
+        assertTrue(limit.acquire(0).isDone());
+        CompletableFuture<Void> first = limit.acquire(0);
+        CompletableFuture<Void> second = limit.acquire(0);
+
+        assertFalse(first.isDone());
+        assertEquals(2, limit.stats().get("waiting"));
+
+        limit.release();
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+
+        limit.release();
+        limit.release();
+        assertEquals(0, limit.stats().get("inFlight"));
+    }
+
+    @Test
+    public void failsWaitersAfterTheRequestTimeout() throws Exception {
+
+        ConnectionLimit limit = new ConnectionLimit(1);
+        limit.acquire(0);
+        CompletableFuture<Void> waiter = limit.acquire(50);
+
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS));
+        assertTrue(ex.getCause() instanceof ConnectionPoolTimeoutException);
+        assertEquals(0, limit.stats().get("waiting"));
+    }
+
+    @Test
+    public void skipsCancelledWaiters() {
+
+        ConnectionLimit limit = new ConnectionLimit(1);
+        limit.acquire(0);
+        CompletableFuture<Void> cancelled = limit.acquire(0);
+        CompletableFuture<Void> waiting = limit.acquire(0);
+
+        cancelled.cancel(false);
+        limit.release();
+        assertTrue(waiting.isDone());
+        assertFalse(waiting.isCompletedExceptionally());
+    }
+
+    @Test
+    public void awaitTimesOutWithThePoolException() {
+
+        ConnectionLimit limit = new ConnectionLimit(1);
+        limit.acquire(0);
+
+        assertThrows(ConnectionPoolTimeoutException.class, () -> limit.await(50));
+    }
+
+    @Test
+    public void rejectsNoConnections() {
+        assertThrows(IllegalArgumentException.class, () -> new ConnectionLimit(0));
+    }
+}
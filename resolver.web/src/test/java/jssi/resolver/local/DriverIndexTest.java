@@ -0,0 +1,136 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import jssi.resolver.driver.http.HttpDriver;
+import org.junit.jupiter.api.Test;
+import uniresolver.driver.Driver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Parsing of the DID method prefix of the driver patterns, and dispatch of
+ * identifiers through the index.
+ *
+ * @author UBICUA
+ */
+public class DriverIndexTest {
+
+    private static final String SOV_PATTERN = "^(did:sov:(?:(?:\\w[-\\w]*(?::\\w[-\\w]*)*):)?(?:[1-9A-HJ-NP-Za-km-z]{21,22}))$";
+
+    @Test
+    public void keysLiteralPrefixes() {
+
+        assertEquals(methods("sov"), DriverIndex.methods(Pattern.compile(SOV_PATTERN)));
+        assertEquals(methods("btcr"), DriverIndex.methods(Pattern.compile("^(did:btcr:.+)$")));
+        assertEquals(methods("web"), DriverIndex.methods(Pattern.compile("^did:web:.+$")));
+        assertEquals(methods("x"), DriverIndex.methods(Pattern.compile("^(?:did:x:.+)$")));
+        assertEquals(methods("ion"), DriverIndex.methods(Pattern.compile("did:ion:.+")));
+    }
+
+    @Test
+    public void keysEveryTopLevelAlternative() {
+        assertEquals(methods("sov", "ccp"), DriverIndex.methods(Pattern.compile("^(did:sov:.+)|(did:ccp:.+)$")));
+    }
+
+    @Test
+    public void ignoresAlternationsAndClassesAfterThePrefix() {
+
+        assertEquals(methods("x"), DriverIndex.methods(Pattern.compile("^(did:x:(a|b))$")));
+        assertEquals(methods("x"), DriverIndex.methods(Pattern.compile("^did:x:[|].+$")));
+        assertEquals(methods("x"), DriverIndex.methods(Pattern.compile("^did:x:\\|.+$")));
+    }
+
+    @Test
+    public void doesNotKeyOptionalPrefixes() {
+
+        assertNull(DriverIndex.methods(Pattern.compile("^(did:x:.+)?foo$")));
+        assertNull(DriverIndex.methods(Pattern.compile("^(did:x:.+)*$")));
+        assertNull(DriverIndex.methods(Pattern.compile("^(did:x:.+){0,1}$")));
+        assertNull(DriverIndex.methods(Pattern.compile("^did:x:?.+$")));
+    }
+
+    @Test
+    public void doesNotKeyPrefixesThatCanBeBypassed() {
+
+        assertNull(DriverIndex.methods(Pattern.compile("^did:x:.+|.+$")));
+        assertNull(DriverIndex.methods(Pattern.compile("^(did:x:.+|other)$")));
+        assertNull(DriverIndex.methods(Pattern.compile("^did:[a-z]+:.+$")));
+    }
+
+    @Test
+    public void doesNotKeyPatternsWithFlags() {
+
+        assertNull(DriverIndex.methods(Pattern.compile("^(?i)did:x:.+$")));
+        assertNull(DriverIndex.methods(Pattern.compile("^did:x:.+$", Pattern.CASE_INSENSITIVE)));
+        assertNull(DriverIndex.methods(null));
+    }
+
+    @Test
+    public void readsTheMethodOfIdentifiers() {
+
+        assertEquals("sov", DriverIndex.method("did:sov:WRfXPg8dantKVubE3HX8pw"));
+        assertNull(DriverIndex.method("did:sov"));
+        assertNull(DriverIndex.method("did::x"));
+        assertNull(DriverIndex.method("urn:x:y"));
+        assertNull(DriverIndex.method(null));
+    }
+
+    @Test
+    public void dispatchesByMethodInConfigurationOrder() {
+
+        Map<String, Driver> drivers = new LinkedHashMap<>();
+        drivers.put("sov", driver(SOV_PATTERN));
+        drivers.put("any", driver("^(.+)$"));
+        drivers.put("btcr", driver("^(did:btcr:.+)$"));
+        DriverIndex index = new DriverIndex(drivers);
+
+        assertEquals(Arrays.asList("sov", "any"), ids(index.candidates("did:sov:WRfXPg8dantKVubE3HX8pw")));
+        assertEquals(Arrays.asList("any", "btcr"), ids(index.candidates("did:btcr:xz35-jznz-q6mr-7q6")));
+        assertEquals(Collections.singletonList("any"), ids(index.candidates("did:web:example.com")));
+        assertEquals("sov", index.indexedMethod("did:sov:WRfXPg8dantKVubE3HX8pw"));
+        assertNull(index.indexedMethod("did:web:example.com"));
+    }
+
+    /*
+     * Helper methods
+     */
+    private static LinkedHashSet<String> methods(String... methods) {
+        return new LinkedHashSet<>(Arrays.asList(methods));
+    }
+
+    private static HttpDriver driver(String pattern) {
+
+        HttpDriver driver = new HttpDriver();
+        driver.setPattern(pattern);
+        return driver;
+    }
+
+    private static List<String> ids(Map<String, Driver> candidates) {
+        return new ArrayList<>(candidates.keySet());
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uniresolver.ResolutionException;
+import uniresolver.driver.Driver;
+import uniresolver.result.ResolveResult;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Hedging of driver calls. The hedges run on a scheduler whose clock is
+ * advanced by the test, and every driver call is a future completed by the
+ * test.
+ *
+ * @author UBICUA
+ */
+public class DriverRaceTest {
+
+    private static final String DID = "did:sov:WRfXPg8dantKVubE3HX8pw";
+    private static final long HEDGE_DELAY = 200L;
+
+    private ManualScheduler scheduler;
+    private DriverRace race;
+    private Map<String, CompletableFuture<ResolveResult>> calls;
+
+    @BeforeEach
+    public void setUp() {
+        scheduler = new ManualScheduler();
+        race = new DriverRace(HEDGE_DELAY, scheduler);
+        calls = new LinkedHashMap<>();
+    }
+
+    @Test
+    public void hedgesAfterTheDelay() {
+
+        CompletableFuture<DriverRace.Winner> winner = race(DID, "a", "b", "c");
+        assertEquals(Collections.singletonList("a"), called());
+
+        scheduler.advance(HEDGE_DELAY - 1);
+        assertEquals(Collections.singletonList("a"), called());
+
+        scheduler.advance(1);
+        assertEquals(Arrays.asList("a", "b"), called());
+
+        scheduler.advance(HEDGE_DELAY);
+        assertEquals(Arrays.asList("a", "b", "c"), called());
+        assertFalse(winner.isDone());
+    }
+
+    @Test
+    public void firstResultWinsAndCancelsTheLosers() throws Exception {
+
+        CompletableFuture<DriverRace.Winner> winner = race(DID, "a", "b", "c");
+        scheduler.advance(HEDGE_DELAY);
+
+        ResolveResult resolveResult = ResolveResult.build();
+        calls.get("b").complete(resolveResult);
+
+        assertEquals("b", winner.get().getDriverId());
+        assertSame(resolveResult, winner.get().getResolveResult());
+        assertEquals(2, winner.get().getAttempts());
+        assertTrue(calls.get("a").isCancelled());
+
+        scheduler.advance(HEDGE_DELAY);
+        assertEquals(Arrays.asList("a", "b"), called());
+    }
+
+    @Test
+    public void failureStartsTheNextDriverAtOnce() throws Exception {
+
+        CompletableFuture<DriverRace.Winner> winner = race(DID, "a", "b");
+        calls.get("a").completeExceptionally(new ResolutionException("Driver a failed"));
+
+        assertEquals(Arrays.asList("a", "b"), called());
+        assertFalse(winner.isDone());
+
+        calls.get("b").complete(ResolveResult.build());
+        assertEquals("b", winner.get().getDriverId());
+    }
+
+    @Test
+    public void noResultWhenEveryDriverFindsNothing() throws Exception {
+
+        CompletableFuture<DriverRace.Winner> winner = race(DID, "a", "b");
+        calls.get("a").complete(null);
+        calls.get("b").complete(null);
+
+        assertNull(winner.get());
+    }
+
+    @Test
+    public void failsWhenEveryDriverFails() {
+
+        CompletableFuture<DriverRace.Winner> winner = race(DID, "a", "b");
+        ResolutionException failure = new ResolutionException("Driver b failed");
+        calls.get("a").complete(null);
+        calls.get("b").completeExceptionally(failure);
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, winner::get);
+        assertSame(failure, thrown.getCause());
+    }
+
+    @Test
+    public void noResultWithoutCandidates() throws Exception {
+        assertNull(race(DID).get());
+    }
+
+    @Test
+    public void closeShutsDownTheScheduler() {
+
+        race.close();
+        assertTrue(scheduler.isShutdown());
+    }
+
+    /*
+     * Helper methods
+     */
+    private CompletableFuture<DriverRace.Winner> race(String identifier, String... driverIds) {
+
+        Map<String, Driver> candidates = new LinkedHashMap<>();
+        for (String driverId : driverIds) {
+            candidates.put(driverId, null);
+        }
+
+        return race.race(identifier, candidates, (driver, id) -> {
+            CompletableFuture<ResolveResult> call = new CompletableFuture<>();
+            calls.put(driver.getKey(), call);
+            return call;
+        });
+    }
+
+    private List<String> called() {
+        return new ArrayList<>(calls.keySet());
+    }
+
+    /**
+     * Scheduler running the delayed tasks when the test advances its clock,
+     * on the calling thread.
+     */
+    private static class ManualScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+
+        private final List<Task<?>> tasks = new ArrayList<>();
+        private long now = 0L;
+        private boolean shutdown = false;
+
+        private void advance(long millis) {
+
+            now += millis;
+
+            Task<?> due;
+            while ((due = nextDue()) != null) {
+                tasks.remove(due);
+                due.run();
+            }
+        }
+
+        private Task<?> nextDue() {
+
+            Task<?> next = null;
+            for (Task<?> task : tasks) {
+                if (task.time <= now && (next == null || task.time < next.time)) {
+                    next = task;
+                }
+            }
+            return next;
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            return schedule(Executors.callable(command), delay, unit);
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+
+            Task<V> task = new Task<>(callable, now + unit.toMillis(delay));
+            tasks.add(task);
+            return task;
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            schedule(command, 0L, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+
+            shutdown = true;
+            List<Runnable> pending = new ArrayList<>(tasks);
+            tasks.clear();
+            return pending;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return shutdown;
+        }
+
+        private class Task<V> extends FutureTask<V> implements ScheduledFuture<V> {
+
+            private final long time;
+
+            private Task(Callable<V> callable, long time) {
+                super(callable);
+                this.time = time;
+            }
+
+            @Override
+            public long getDelay(TimeUnit unit) {
+                return unit.convert(time - now, TimeUnit.MILLISECONDS);
+            }
+
+            @Override
+            public int compareTo(Delayed other) {
+                return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import uniresolver.ResolutionException;
+import uniresolver.result.ResolveResult;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Coalescing of concurrent resolutions. The shared driver call is a future
+ * completed by the test, so the callers are in flight together without
+ * threads or timing.
+ *
+ * @author UBICUA
+ */
+public class SingleFlightTest {
+
+    private static final String DID = "did:sov:WRfXPg8dantKVubE3HX8pw";
+
+    @Test
+    public void coalescesResolutionsOfTheSameKey() throws Exception {
+
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<ResolveResult> driver = new CompletableFuture<>();
+
+        CompletableFuture<ResolveResult> first = singleFlight.executeAsync(DID, () -> {
+            calls.incrementAndGet();
+            return driver;
+        });
+        CompletableFuture<ResolveResult> second = singleFlight.executeAsync(DID, () -> {
+            calls.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+
+        assertEquals(1, calls.get());
+        assertEquals(1, singleFlight.size());
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+
+        driver.complete(ResolveResult.build());
+
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+        assertEquals(0, singleFlight.size());
+    }
+
+    @Test
+    public void givesEveryCallerItsOwnCopy() throws Exception {
+
+        SingleFlight singleFlight = new SingleFlight();
+        CompletableFuture<ResolveResult> driver = new CompletableFuture<>();
+        ResolveResult shared = ResolveResult.build();
+
+        CompletableFuture<ResolveResult> first = singleFlight.executeAsync(DID, () -> driver);
+        CompletableFuture<ResolveResult> second = singleFlight.executeAsync(DID, () -> driver);
+        driver.complete(shared);
+
+        ResolveResult firstResult = first.get();
+        ResolveResult secondResult = second.get();
+        assertNotSame(shared, firstResult);
+        assertNotSame(shared, secondResult);
+        assertNotSame(firstResult, secondResult);
+
+        firstResult.getDidResolutionMetadata().put("duration", 1L);
+        firstResult.getDidDocumentMetadata().put("updated", "2021-01-01T00:00:00Z");
+        assertFalse(secondResult.getDidResolutionMetadata().containsKey("duration"));
+        assertFalse(shared.getDidResolutionMetadata().containsKey("duration"));
+        assertFalse(secondResult.getDidDocumentMetadata().containsKey("updated"));
+        assertFalse(shared.getDidDocumentMetadata().containsKey("updated"));
+    }
+
+    @Test
+    public void doesNotCoalesceDifferentKeys() {
+
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger calls = new AtomicInteger();
+
+        singleFlight.executeAsync(DID, () -> {
+            calls.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+        singleFlight.executeAsync(DID + "#key-1", () -> {
+            calls.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+
+        assertEquals(2, calls.get());
+        assertEquals(2, singleFlight.size());
+    }
+
+    @Test
+    public void resolvesAgainOnceTheFlightLanded() throws Exception {
+
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger calls = new AtomicInteger();
+
+        singleFlight.execute(DID, () -> {
+            calls.incrementAndGet();
+            return ResolveResult.build();
+        });
+        singleFlight.execute(DID, () -> {
+            calls.incrementAndGet();
+            return ResolveResult.build();
+        });
+
+        assertEquals(2, calls.get());
+        assertEquals(0, singleFlight.size());
+    }
+
+    @Test
+    public void sharesTheFailureWithEveryCaller() {
+
+        SingleFlight singleFlight = new SingleFlight();
+        CompletableFuture<ResolveResult> driver = new CompletableFuture<>();
+        ResolutionException failure = new ResolutionException("Driver failed");
+
+        CompletableFuture<ResolveResult> first = singleFlight.executeAsync(DID, () -> driver);
+        CompletableFuture<ResolveResult> second = singleFlight.executeAsync(DID, () -> driver);
+        driver.completeExceptionally(failure);
+
+        ExecutionException firstFailure = assertThrows(ExecutionException.class, first::get);
+        ExecutionException secondFailure = assertThrows(ExecutionException.class, second::get);
+        assertSame(failure, firstFailure.getCause());
+        assertSame(failure, secondFailure.getCause());
+        assertEquals(0, singleFlight.size());
+    }
+
+    @Test
+    public void rethrowsTheResolutionException() {
+
+        SingleFlight singleFlight = new SingleFlight();
+        ResolutionException failure = new ResolutionException("Driver failed");
+
+        ResolutionException thrown = assertThrows(ResolutionException.class, () -> singleFlight.execute(DID, () -> {
+            throw failure;
+        }));
+        assertSame(failure, thrown);
+    }
+
+    @Test
+    public void keySortsTheOptions() {
+
+        Map<String, String> options = new HashMap<>();
+        options.put("versionId", "2");
+        options.put("accept", "application/did+ld+json");
+
+        assertEquals(DID, SingleFlight.key(DID, null));
+        assertEquals(DID, SingleFlight.key(DID, new HashMap<>()));
+        assertEquals(DID + "?accept=application/did+ld+json&versionId=2", SingleFlight.key(DID, options));
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local.cache;
+
+import did.DIDDocument;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import jssi.resolver.local.cache.MemoryResolveCache.Eviction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uniresolver.result.ResolveResult;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Expiration, eviction and size limits of the memory cache, with a clock
+ * advanced by the test.
+ *
+ * @author UBICUA
+ */
+public class MemoryResolveCacheTest {
+
+    private static final long TTL = 1000L;
+    private static final long NEGATIVE_TTL = 100L;
+
+    private long now;
+
+    @BeforeEach
+    public void setUp() {
+        now = 1000000L;
+    }
+
+    @Test
+    public void returnsEntriesWithinTheirTimeToLive() {
+
+        MemoryResolveCache cache = cache(Eviction.LRU, 10, 0L);
+        cache.put("did:ex:1", "driver", result("did:ex:1"));
+
+        now += TTL - 1;
+        CacheEntry entry = cache.get("did:ex:1");
+        assertNotNull(entry);
+        assertFalse(entry.isNegative());
+        assertEquals(TTL - 1, entry.getAge(now));
+
+        now += 1;
+        assertNull(cache.get("did:ex:1"));
+        assertEquals(0, cache.size());
+        assertEquals(1L, cache.getHits());
+        assertEquals(1L, cache.getMisses());
+    }
+
+    @Test
+    public void appliesTheTimeToLiveOfTheDriver() {
+
+        MemoryResolveCache cache = cache(Eviction.LRU, 10, 0L);
+        cache.setTtl("slow", 10L * TTL);
+        cache.put("did:ex:1", "slow", result("did:ex:1"));
+
+        now += TTL;
+        assertNotNull(cache.get("did:ex:1"));
+        assertEquals(10L * TTL, cache.getTtl("slow"));
+        assertEquals(TTL, cache.getTtl("other"));
+    }
+
+    @Test
+    public void keepsNotFoundResultsForTheNegativeTimeToLive() {
+
+        MemoryResolveCache cache = cache(Eviction.LRU, 10, 0L);
+        cache.put("did:ex:1", null, ResolveResult.build());
+        cache.put("did:ex:2", "driver", ResolveResult.build());
+
+        assertTrue(cache.get("did:ex:1").isNegative());
+        assertTrue(cache.get("did:ex:2").isNegative());
+
+        now += NEGATIVE_TTL;
+        assertNull(cache.get("did:ex:1"));
+        assertNull(cache.get("did:ex:2"));
+    }
+
+    @Test
+    public void storesNoNotFoundResultsWithoutNegativeTimeToLive() {
+
+        MemoryResolveCache cache = new MemoryResolveCache(Eviction.LRU, 10, 0L, TTL, 0L, () -> now);
+        cache.put("did:ex:1", null, ResolveResult.build());
+
+        assertNull(cache.get("did:ex:1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedEntry() {
+
+        MemoryResolveCache cache = cache(Eviction.LRU, 2, 0L);
+        cache.put("did:ex:1", "driver", result("did:ex:1"));
+        cache.put("did:ex:2", "driver", result("did:ex:2"));
+
+        cache.get("did:ex:1");
+        cache.put("did:ex:3", "driver", result("did:ex:3"));
+
+        assertNotNull(cache.get("did:ex:1"));
+        assertNull(cache.get("did:ex:2"));
+        assertNotNull(cache.get("did:ex:3"));
+        assertEquals(1L, cache.getEvictions());
+    }
+
+    @Test
+    public void evictsTheLeastFrequentlyUsedEntry() {
+
+        MemoryResolveCache cache = cache(Eviction.LFU, 2, 0L);
+        cache.put("did:ex:1", "driver", result("did:ex:1"));
+        cache.put("did:ex:2", "driver", result("did:ex:2"));
+
+        cache.get("did:ex:1");
+        cache.get("did:ex:1");
+        cache.get("did:ex:2");
+        cache.put("did:ex:3", "driver", result("did:ex:3"));
+
+        assertNotNull(cache.get("did:ex:1"));
+        assertNull(cache.get("did:ex:2"));
+        assertNotNull(cache.get("did:ex:3"));
+        assertEquals(1L, cache.getEvictions());
+    }
+
+    @Test
+    public void evictsBeyondTheByteLimit() {
+
+        long size = MemoryResolveCache.estimateSize(result("did:ex:1"));
+        MemoryResolveCache cache = cache(Eviction.LRU, 10, 2 * size);
+        cache.put("did:ex:1", "driver", result("did:ex:1"));
+        cache.put("did:ex:2", "driver", result("did:ex:2"));
+        assertEquals(2 * size, cache.getBytes());
+
+        cache.put("did:ex:3", "driver", result("did:ex:3"));
+
+        assertNull(cache.get("did:ex:1"));
+        assertEquals(2, cache.size());
+        assertEquals(2 * size, cache.getBytes());
+    }
+
+    @Test
+    public void skipsResultsLargerThanTheCache() {
+
+        ResolveResult resolveResult = result("did:ex:1");
+        MemoryResolveCache cache = cache(Eviction.LRU, 10, MemoryResolveCache.estimateSize(resolveResult) - 1);
+        cache.put("did:ex:1", "driver", resolveResult);
+
+        assertNull(cache.get("did:ex:1"));
+        assertEquals(0L, cache.getBytes());
+    }
+
+    @Test
+    public void doesNotMeasureWithoutByteLimit() {
+
+        MemoryResolveCache cache = cache(Eviction.LRU, 10, 0L);
+        cache.put("did:ex:1", "driver", result("did:ex:1"));
+
+        assertNotNull(cache.get("did:ex:1"));
+        assertEquals(0L, cache.getBytes());
+    }
+
+    @Test
+    public void estimatesTheSizeFromTheStructure() {
+
+        ResolveResult small = result("did:ex:1");
+        ResolveResult large = result("did:ex:1");
+        large.getDidDocumentMetadata().put("note", new String(new char[1000]));
+
+        assertTrue(MemoryResolveCache.estimateSize(small) > "did:ex:1".length());
+        assertEquals(MemoryResolveCache.estimateSize(small) + "note".length() + 4L + 1000L + 2L, MemoryResolveCache.estimateSize(large));
+    }
+
+    @Test
+    public void handsOutCopiesOfTheEntries() {
+
+        MemoryResolveCache cache = cache(Eviction.LRU, 10, 0L);
+        ResolveResult resolveResult = result("did:ex:1");
+        cache.put("did:ex:1", "driver", resolveResult);
+        resolveResult.getDidResolutionMetadata().put("duration", 1L);
+
+        ResolveResult hit = cache.get("did:ex:1").getResolveResult();
+        assertFalse(hit.getDidResolutionMetadata().containsKey("duration"));
+
+        hit.getDidResolutionMetadata().put("cacheAge", 1L);
+        hit.getDidDocumentMetadata().put("updated", "2021-01-01T00:00:00Z");
+        ResolveResult otherHit = cache.get("did:ex:1").getResolveResult();
+        assertFalse(otherHit.getDidResolutionMetadata().containsKey("cacheAge"));
+        assertFalse(otherHit.getDidDocumentMetadata().containsKey("updated"));
+    }
+
+    @Test
+    public void invalidatesMatchingKeys() {
+
+        MemoryResolveCache cache = cache(Eviction.LRU, 10, 0L);
+        cache.put("did:ex:1", "driver", result("did:ex:1"));
+        cache.put("did:ex:2", "driver", result("did:ex:2"));
+        cache.put("did:other:1", "driver", result("did:other:1"));
+
+        assertEquals(2, cache.invalidateIf(key -> key.startsWith("did:ex:")));
+        assertEquals(1, cache.keys().size());
+        assertEquals("did:other:1", cache.keys().get(0));
+    }
+
+    /*
+     * Helper methods
+     */
+    private MemoryResolveCache cache(Eviction eviction, int maxEntries, long maxBytes) {
+        return new MemoryResolveCache(eviction, maxEntries, maxBytes, TTL, NEGATIVE_TTL, () -> now);
+    }
+
+    private static ResolveResult result(String identifier) {
+
+        Map<String, Object> jsonObject = new LinkedHashMap<>();
+        jsonObject.put("@context", "https://www.w3.org/ns/did/v1");
+        jsonObject.put("id", identifier);
+
+        Map<String, Object> didDocumentMetadata = new LinkedHashMap<>();
+        didDocumentMetadata.put("created", "2021-01-01T00:00:00Z");
+
+        return ResolveResult.build(DIDDocument.fromJsonObject(jsonObject), null, null, new LinkedHashMap<>(), didDocumentMetadata);
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ *
+ *  * Copyright 2021 UBICUA.
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *      http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+package jssi.resolver.local.resilience;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import jssi.resolver.driver.http.DriverResponseException;
+import jssi.resolver.local.resilience.CircuitBreaker.State;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uniresolver.ResolutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Transitions of the circuit breaker, with a clock advanced by the test: a
+ * window of 4 calls, opening at 50% of failures or 80% of slow calls (1 s),
+ * open for 10 s and probed with 2 calls.
+ *
+ * @author UBICUA
+ */
+public class CircuitBreakerTest {
+
+    private static final long SLOW = 1000L;
+    private static final long OPEN_DURATION = 10000L;
+
+    private long now;
+    private CircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    public void setUp() {
+        now = 1000000L;
+        circuitBreaker = new CircuitBreaker("test", 4, 4, 50, 80, SLOW, OPEN_DURATION, 2, () -> now);
+    }
+
+    @Test
+    public void staysClosedBelowTheMinimumCalls() {
+
+        failures(3);
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.tryAcquire());
+
+        circuitBreaker.onFailure(1L);
+        assertEquals(State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void opensAtTheFailureRate() {
+
+        successes(1, 1L);
+        failures(2);
+        successes(1, 1L);
+        assertEquals(State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void opensAtTheSlowCallRate() {
+
+        successes(1, 1L);
+        successes(3, SLOW);
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+
+        successes(1, SLOW);
+        assertEquals(State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void forgetsCallsLeavingTheWindow() {
+
+        failures(1);
+        successes(3, 1L);
+        failures(1);
+        successes(1, 1L);
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+        assertEquals(25, circuitBreaker.stats().get("failureRate"));
+    }
+
+    @Test
+    public void rejectsCallsWhileOpen() {
+
+        failures(4);
+        assertFalse(circuitBreaker.tryAcquire());
+
+        now += OPEN_DURATION - 1;
+        assertFalse(circuitBreaker.tryAcquire());
+        assertEquals(State.OPEN, circuitBreaker.getState());
+        assertEquals(2L, circuitBreaker.stats().get("rejected"));
+    }
+
+    @Test
+    public void letsProbesThroughAfterTheOpenDuration() {
+
+        failures(4);
+        now += OPEN_DURATION;
+
+        assertTrue(circuitBreaker.tryAcquire());
+        assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+        assertTrue(circuitBreaker.tryAcquire());
+        assertFalse(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void closesWhenEveryProbeSucceeds() {
+
+        failures(4);
+        now += OPEN_DURATION;
+        circuitBreaker.tryAcquire();
+        circuitBreaker.tryAcquire();
+
+        circuitBreaker.onSuccess(1L);
+        assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+
+        circuitBreaker.onSuccess(1L);
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+        assertEquals(0, circuitBreaker.stats().get("calls"));
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void opensAgainWhenAProbeFails() {
+
+        failures(4);
+        now += OPEN_DURATION;
+        circuitBreaker.tryAcquire();
+
+        circuitBreaker.onFailure(1L);
+        assertEquals(State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquire());
+
+        now += OPEN_DURATION;
+        assertTrue(circuitBreaker.tryAcquire());
+        assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void opensAgainWhenAProbeIsSlow() {
+
+        failures(4);
+        now += OPEN_DURATION;
+        circuitBreaker.tryAcquire();
+
+        circuitBreaker.onSuccess(SLOW);
+        assertEquals(State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void releaseGivesBackAProbe() {
+
+        failures(4);
+        now += OPEN_DURATION;
+        circuitBreaker.tryAcquire();
+        circuitBreaker.tryAcquire();
+        assertFalse(circuitBreaker.tryAcquire());
+
+        circuitBreaker.release();
+        assertTrue(circuitBreaker.tryAcquire());
+        assertFalse(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void ignoresLateOutcomesWhileOpen() {
+
+        failures(4);
+        successes(4, 1L);
+        assertEquals(State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void clientErrorsDoNotOpenTheCircuit() {
+
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onError(1L, new DriverResponseException("Invalid DID", 400));
+        }
+        circuitBreaker.onError(1L, new ResolutionException("Cannot parse identifier"));
+
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+        assertEquals(0, circuitBreaker.stats().get("failureRate"));
+    }
+
+    @Test
+    public void driverErrorsOpenTheCircuit() {
+
+        circuitBreaker.onError(1L, new DriverResponseException("Service Unavailable", 503));
+        circuitBreaker.onError(1L, new DriverResponseException("Too Many Requests", 429));
+        circuitBreaker.onError(1L, new ResolutionException("Cannot retrieve RESOLVE RESULT", new SocketTimeoutException("Read timed out")));
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+
+        circuitBreaker.onError(1L, new CompletionException(new TimeoutException("Timeout after 1000 ms")));
+        assertEquals(State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void classifiesErrors() {
+
+        assertFalse(CircuitBreaker.isFailure(new DriverResponseException("Bad Request", 400)));
+        assertFalse(CircuitBreaker.isFailure(new CompletionException(new DriverResponseException("Gone", 410))));
+        assertFalse(CircuitBreaker.isFailure(new ResolutionException("Invalid DID")));
+        assertTrue(CircuitBreaker.isFailure(new DriverResponseException("Request Timeout", 408)));
+        assertTrue(CircuitBreaker.isFailure(new DriverResponseException("Internal Server Error", 500)));
+        assertTrue(CircuitBreaker.isFailure(new ResolutionException("Cannot retrieve RESOLVE RESULT", new IOException("Connection reset"))));
+        assertTrue(CircuitBreaker.isFailure(new IllegalStateException("Driver bug")));
+    }
+
+    @Test
+    public void rejectsAnEmptyWindow() {
+        assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker("test", 0, 1, 50, 80, SLOW, OPEN_DURATION, 1));
+        assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker("test", 4, 1, 50, 80, SLOW, OPEN_DURATION, 0));
+    }
+
+    /*
+     * Helper methods
+     */
+    private void failures(int count) {
+        for (int i = 0; i < count; i++) {
+            circuitBreaker.onFailure(1L);
+        }
+    }
+
+    private void successes(int count, long duration) {
+        for (int i = 0; i < count; i++) {
+            circuitBreaker.onSuccess(duration);
+        }
+    }
+}